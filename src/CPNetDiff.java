@@ -0,0 +1,263 @@
+import java.util.*;
+
+// Structural comparison of two CP-nets (e.g., a learned net against the net that generated its examples)
+// Tables are compared one variable at a time after removing superfluous parents (CPTable.normalized), so the cost is
+//  linear in the size of the CP-tables rather than exponential in the number of variables like diffing allEntailments()
+// For complete acyclic CP-nets over the same variables, identical normalized tables is the same as entailing the same
+//  preferences: every single-variable flip is ordered by both nets, so any table row where they differ gives a pair of
+//  outcomes the nets order oppositely
+// For how far apart two nets are in practice, see the sampled agreement metrics below
+class CPNetDiff
+{
+    // Variables that only the first CP-net has
+    TreeSet<String> onlyInFirst = new TreeSet<String>();
+    // Variables that only the second CP-net has
+    TreeSet<String> onlyInSecond = new TreeSet<String>();
+    // Shared variables whose (normalized) parent sets differ
+    TreeSet<String> differingParents = new TreeSet<String>();
+    // Shared variable with differing tables -> fraction of assignments to the union of both parent sets on which the
+    //  tables disagree (including one table having no entry)
+    TreeMap<String,Double> differingRows = new TreeMap<String,Double>();
+
+    // Compare the CP-tables of two CP-nets
+    static CPNetDiff diff(PreferenceSpecification first, PreferenceSpecification second)
+    {
+        CPNetDiff diff = new CPNetDiff();
+        for (String var : first.getVars())
+        {
+            if (!second.getVars().contains(var))
+            {
+                diff.onlyInFirst.add(var);
+            }
+        }
+        for (String var : second.getVars())
+        {
+            if (!first.getVars().contains(var))
+            {
+                diff.onlyInSecond.add(var);
+                continue;
+            }
+            CPTable firstTable = first.getCPT(var).normalized();
+            CPTable secondTable = second.getCPT(var).normalized();
+            if (firstTable.equals(secondTable))
+            {
+                continue;
+            }
+            HashSet<String> parents = firstTable.getParents();
+            if (!parents.equals(secondTable.getParents()))
+            {
+                diff.differingParents.add(var);
+            }
+            parents.addAll(secondTable.getParents());
+            int numDisagreements = 0;
+            GrayCodeCursor cursor = new GrayCodeCursor(new ArrayList<String>(new TreeSet<String>(parents)));
+            do
+            {
+                Boolean firstValue = firstTable.preferredValueGiven(cursor.assignment());
+                if (firstValue == null || !firstValue.equals(secondTable.preferredValueGiven(cursor.assignment())))
+                {
+                    numDisagreements++;
+                }
+            } while (cursor.next());
+            diff.differingRows.put(var,numDisagreements / (double) (1L << parents.size()));
+        }
+        return diff;
+    }
+
+    // Whether the two CP-nets have the same variables and the same normalized CP-tables
+    public boolean isEquivalent()
+    {
+        return this.onlyInFirst.isEmpty() && this.onlyInSecond.isEmpty() && this.differingRows.isEmpty();
+    }
+
+    // Pretty string listing the differences (or "equivalent")
+    @Override
+    public String toString()
+    {
+        if (this.isEquivalent())
+        {
+            return "equivalent";
+        }
+        StringBuilder out = new StringBuilder();
+        if (!this.onlyInFirst.isEmpty())
+        {
+            out.append("only in first: ").append(this.onlyInFirst).append('\n');
+        }
+        if (!this.onlyInSecond.isEmpty())
+        {
+            out.append("only in second: ").append(this.onlyInSecond).append('\n');
+        }
+        if (!this.differingParents.isEmpty())
+        {
+            out.append("differing parents: ").append(this.differingParents).append('\n');
+        }
+        if (!this.differingRows.isEmpty())
+        {
+            out.append("differing rows: ").append(this.differingRows).append('\n');
+        }
+        return out.toString().trim();
+    }
+
+    // Sampled agreement metrics
+    // Both CP-nets must be acyclic and over the same variables; a missing table entry counts as a disagreement, so
+    //  incomplete learned nets can be scored too
+
+    // Fraction of random conditions (drawn like OptimalExample.uniformlyRandomExample) for which both CP-nets have
+    //  the same optimal outcome, i.e., the fraction of optimal examples of one net that the other agrees with
+    static double optimumAgreement(PreferenceSpecification first, PreferenceSpecification second, int samples, Random rng)
+    {
+        CPNetDiff.checkSameVars(first,second);
+        List<String> firstOrder = CPNetDiff.checkedOrder(first);
+        List<String> secondOrder = CPNetDiff.checkedOrder(second);
+        VariableIndex index = new VariableIndex(first.getVars());
+        int numAgreements = 0;
+        if (index.size() < 64)
+        {
+            // Word version, using the frozen snapshots' compiled tables
+            FrozenPreferenceSpecification firstModel = first.freeze();
+            FrozenPreferenceSpecification secondModel = second.freeze();
+            int[] firstIds = CPNetDiff.ids(firstOrder,index);
+            int[] secondIds = CPNetDiff.ids(secondOrder,index);
+            for (int i = 0; i < samples; i++)
+            {
+                long assignedMask = 0L;
+                long values = 0L;
+                for (int var = 0; var < index.size(); var++)
+                {
+                    int choice = rng.nextInt(3);
+                    if (choice < 2)
+                    {
+                        assignedMask |= (1L << var);
+                        values |= (choice == 0) ? (1L << var) : 0L;
+                    }
+                }
+                long firstOptimum = CPNetDiff.optimumGiven(firstModel,firstIds,assignedMask,values);
+                if (firstOptimum != -1L && firstOptimum == CPNetDiff.optimumGiven(secondModel,secondIds,assignedMask,values))
+                {
+                    numAgreements++;
+                }
+            }
+            return numAgreements / (double) samples;
+        }
+
+        for (int i = 0; i < samples; i++)
+        {
+            Assignment condition = new Assignment();
+            for (int var = 0; var < index.size(); var++)
+            {
+                int choice = rng.nextInt(3);
+                if (choice < 2)
+                {
+                    condition.put(index.name(var),choice == 0);
+                }
+            }
+            Assignment firstOptimum = CPNetDiff.optimumGiven(first,firstOrder,condition);
+            if (firstOptimum != null && firstOptimum.equals(CPNetDiff.optimumGiven(second,secondOrder,condition)))
+            {
+                numAgreements++;
+            }
+        }
+        return numAgreements / (double) samples;
+    }
+    // Helper function
+    // Sweep in the given topological order; -1 if a needed table entry is missing
+    // (Only used with fewer than 64 variables, so -1 is never a real outcome word)
+    private static long optimumGiven(FrozenPreferenceSpecification model, int[] order, long assignedMask, long values)
+    {
+        long optimum = values & assignedMask;
+        for (int var : order)
+        {
+            if ((assignedMask & (1L << var)) != 0)
+            {
+                continue;
+            }
+            byte preferredValue = model.preferredValue(var,optimum);
+            if (preferredValue == CompiledCPT.MISSING)
+            {
+                return -1L;
+            }
+            if (preferredValue == CompiledCPT.TRUE)
+            {
+                optimum |= (1L << var);
+            }
+        }
+        return optimum;
+    }
+    // Helper function
+    // Version for CP-nets too big to freeze; null if a needed table entry is missing
+    private static Assignment optimumGiven(PreferenceSpecification net, List<String> order, Assignment condition)
+    {
+        Assignment optimum = new Assignment(condition);
+        for (String var : order)
+        {
+            if (!optimum.containsKey(var))
+            {
+                Boolean preferredValue = net.preferredValueGiven(var,optimum);
+                if (preferredValue == null)
+                {
+                    return null;
+                }
+                optimum.put(var,preferredValue);
+            }
+        }
+        return optimum;
+    }
+    // Helper function
+    private static int[] ids(List<String> vars, VariableIndex index)
+    {
+        int[] ids = new int[vars.size()];
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = index.id(vars.get(i));
+        }
+        return ids;
+    }
+
+    // Fraction of random (outcome, variable) pairs for which both CP-nets prefer the same value of the variable, i.e.,
+    //  the fraction of single-variable flips that both nets order the same way
+    static double flipAgreement(PreferenceSpecification first, PreferenceSpecification second, int samples, Random rng)
+    {
+        CPNetDiff.checkSameVars(first,second);
+        ArrayList<String> vars = new ArrayList<String>(new TreeSet<String>(first.getVars()));
+        int numAgreements = 0;
+        for (int i = 0; i < samples; i++)
+        {
+            String var = vars.get(rng.nextInt(vars.size()));
+            CPTable firstTable = first.getCPT(var);
+            CPTable secondTable = second.getCPT(var);
+            // Only the parents of var matter, so only they are drawn
+            HashSet<String> parents = firstTable.getParents();
+            parents.addAll(secondTable.getParents());
+            Assignment outcome = new Assignment();
+            for (String parent : new TreeSet<String>(parents))
+            {
+                outcome.put(parent,rng.nextBoolean());
+            }
+            Boolean firstValue = firstTable.preferredValueGiven(outcome);
+            if (firstValue != null && firstValue.equals(secondTable.preferredValueGiven(outcome)))
+            {
+                numAgreements++;
+            }
+        }
+        return numAgreements / (double) samples;
+    }
+
+    // Helper function
+    private static void checkSameVars(PreferenceSpecification first, PreferenceSpecification second)
+    {
+        if (!first.getVars().equals(second.getVars()))
+        {
+            throw new RuntimeException("sampled agreement requires CP-nets over the same variables");
+        }
+    }
+    // Helper function
+    private static List<String> checkedOrder(PreferenceSpecification net)
+    {
+        List<String> order = net.topologicalOrder();
+        if (order == null)
+        {
+            throw new RuntimeException("input CP-net must be acyclic, with a CP-table for every variable");
+        }
+        return order;
+    }
+}
@@ -0,0 +1,120 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Flight-recorder events for CP-net operations
+// They cost next to nothing unless a recording is running; to capture them with the bundled profile, run with
+//  -XX:StartFlightRecording=settings=src/cpnet.jfc,filename=cpnet.jfr
+// and inspect with "jfr print --categories CP-nets cpnet.jfr" or JDK Mission Control
+
+@Name("cpnet.LearnRound")
+@Label("Learning Round")
+@Description("One pass of the learner over the variables not yet added")
+@Category("CP-nets")
+@StackTrace(false)
+class LearnRoundEvent extends Event
+{
+    @Label("Round")
+    int round;
+    @Label("Variable Count")
+    int variableCount;
+    @Label("Variables Added Before Round")
+    int addedBefore;
+    @Label("Variables Added After Round")
+    int addedAfter;
+    @Label("Candidates Evaluated In Round")
+    long candidatesEvaluated;
+}
+
+@Name("cpnet.CandidateEvaluation")
+@Label("Candidate Parent Set Evaluation")
+@Description("createCPTFromOptima checking one candidate parent set for one variable")
+@Category("CP-nets")
+@StackTrace(false)
+class CandidateEvaluationEvent extends Event
+{
+    @Label("Variable")
+    String variable;
+    @Label("Parent Set Size")
+    int parentSetSize;
+    @Label("Examples Scanned")
+    long examplesScanned;
+    @Label("Accepted")
+    boolean accepted;
+}
+
+@Name("cpnet.InducedPreferenceGraph")
+@Label("Induced Preference Graph")
+@Category("CP-nets")
+@StackTrace(false)
+class InducedGraphEvent extends Event
+{
+    @Label("Variable Count")
+    int variableCount;
+    @Label("Outcome Count")
+    long outcomeCount;
+    @Label("Edge Count")
+    long edgeCount;
+}
+
+@Name("cpnet.AllEntailments")
+@Label("All Entailments")
+@Category("CP-nets")
+@StackTrace(false)
+class EntailmentsEvent extends Event
+{
+    @Label("Variable Count")
+    int variableCount;
+    @Label("Outcome Count")
+    long outcomeCount;
+    @Label("Entailment Count")
+    long entailmentCount;
+}
+
+@Name("cpnet.XmlLoad")
+@Label("XML Load")
+@Category("CP-nets")
+@StackTrace(false)
+class XmlLoadEvent extends Event
+{
+    @Label("Path")
+    String path;
+    @Label("Variable Count")
+    int variableCount;
+    @Label("Statement Count")
+    int statementCount;
+}
+
+@Name("cpnet.XmlSave")
+@Label("XML Save")
+@Category("CP-nets")
+@StackTrace(false)
+class XmlSaveEvent extends Event
+{
+    @Label("Path")
+    String path;
+    @Label("Variable Count")
+    int variableCount;
+    @Label("Statement Count")
+    int statementCount;
+}
+
+@Name("cpnet.OptimumBatch")
+@Label("Optimum Batch")
+@Description("Batch sweep computing optimal outcomes for many conditions")
+@Category("CP-nets")
+@StackTrace(false)
+class OptimumBatchEvent extends Event
+{
+    @Label("Variable Count")
+    int variableCount;
+    @Label("Batch Size")
+    int batchSize;
+    @Label("Chunk Size")
+    int chunkSize;
+    @Label("Parallel")
+    boolean parallel;
+}
@@ -1,18 +1,120 @@
 // CP-net learning from optimal examples (unrelated to current work in learning from comparisons over two outcomes)
 // See: Cory Siler, "Learning Conditional Preference Networks from Optimal Examples". Master's thesis, University of Kentucky, 2017.
 
+import java.time.Duration;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
 
 class CPNetLearningFromOptimalExamples
 {
 
     // Learn a binary-valued acyclic CP-net from a set of OptimalExamples (see below)
     public static PreferenceSpecification learn(Set<String> allVars, Set<OptimalExample> exampleSet, Integer inDegreeBound)
+    {
+        return CPNetLearningFromOptimalExamples.learn(allVars, inDegreeBound, CPNetLearningFromOptimalExamples.exactEvaluator(allVars, exampleSet, () -> false, null));
+    }
+    // Compressed version: the learned CP-net also carries a DecisionDiagram of its CP-tables, which its
+    //  preferredValueGiven then uses (see PreferenceSpecification.useDiagram)
+    // Each table is encoded straight from the per-row preferred values found for it, not re-read from the CPTable
+    public static PreferenceSpecification learnCompressed(Set<String> allVars, Set<OptimalExample> exampleSet, Integer inDegreeBound)
+    {
+        DecisionDiagram.Builder diagram = new DecisionDiagram.Builder(allVars);
+        PreferenceSpecification learned = CPNetLearningFromOptimalExamples.learn(allVars, inDegreeBound, CPNetLearningFromOptimalExamples.exactEvaluator(allVars, exampleSet, () -> false, diagram));
+        if (learned != null)
+        {
+            learned.useDiagram(diagram.build());
+        }
+        return learned;
+    }
+    // Noise-tolerant version: accept a parent set if at most the given fraction of the relevant examples disagree with
+    //  the majority preferred value of their parent assignment (0 behaves like the exact version)
+    // The CP-tables store the majority values
+    public static PreferenceSpecification learnTolerantOfNoise(Set<String> allVars, Set<OptimalExample> exampleSet, Integer inDegreeBound, double maxDisagreement)
+    {
+        return CPNetLearningFromOptimalExamples.learn(allVars, inDegreeBound, new CountingCPTBuilder(allVars, exampleSet, maxDisagreement));
+    }
+    // Partitioned version: the examples are streamed out to numWorkers local worker processes instead of being held here
+    // (see ShardedCandidateEvaluator); gives the same result as learn() on the same examples (ShardedLearningCheck checks this)
+    public static PreferenceSpecification learnPartitioned(Set<String> allVars, Iterator<OptimalExample> examples, Integer inDegreeBound, int numWorkers)
+    {
+        try (ShardedCandidateEvaluator evaluator = new ShardedCandidateEvaluator(examples, numWorkers))
+        {
+            return CPNetLearningFromOptimalExamples.learn(allVars, inDegreeBound, evaluator);
+        }
+    }
+    // Version that tries variables and candidate parent sets in the order chosen by a strategy (see LearningOrders)
+    // Returns the full LearningResult so that callers can compare how many candidates each strategy evaluated
+    public static LearningResult learn(Set<String> allVars, Set<OptimalExample> exampleSet, Integer inDegreeBound, LearningOrder order)
+    {
+        return CPNetLearningFromOptimalExamples.learnWithin(allVars, inDegreeBound, CPNetLearningFromOptimalExamples.exactEvaluator(allVars, exampleSet, () -> false, null), order, System.nanoTime(), null, -1);
+    }
+    // Anytime version: stop once the timeout passes (null for none), once evaluationBudget candidate parent sets have been
+    //  evaluated (negative for no limit), or once the calling thread is interrupted (its interrupt status is left set)
+    // Always returns the CP-net built so far, along with the variables that could not be added yet
+    // The timeout covers all of the work, including the evaluator's per-variable precomputation
+    public static LearningResult learnAnytime(Set<String> allVars, Set<OptimalExample> exampleSet, Integer inDegreeBound, Duration timeout, long evaluationBudget)
+    {
+        long startNanos = System.nanoTime();
+        BooleanSupplier stopRequested = () -> Thread.currentThread().isInterrupted()
+                || (timeout != null && System.nanoTime() - startNanos >= timeout.toNanos());
+        return CPNetLearningFromOptimalExamples.learnWithin(allVars, inDegreeBound, CPNetLearningFromOptimalExamples.exactEvaluator(allVars, exampleSet, stopRequested, null), LearningOrders.arbitrary(), startNanos, timeout, evaluationBudget);
+    }
+    // Helper function
+    // The exact evaluator: reject parent sets that any pair of examples contradicts
+    // stopRequested lets a limited run cut short the witness precomputation (the learner then stops at its next check)
+    // If diagram is not null, each accepted CP-table is also encoded into it
+    private static CandidateEvaluator<CPTable> exactEvaluator(Set<String> allVars, Set<OptimalExample> exampleSet, BooleanSupplier stopRequested, DecisionDiagram.Builder diagram)
+    {
+        // Conflicting example pairs for each variable, used to rule out candidate parent sets without building a CPT
+        // Built the first time a variable gets a non-empty candidate parent set, since the empty set is checked
+        //  just as fast by createCPTFromOptima and many variables never need more
+        VariableIndex index = new VariableIndex(allVars);
+        HashMap<String,ConflictWitnesses> varToWitnesses = new HashMap<String,ConflictWitnesses>();
+
+        return (var, candidateParentSet) ->
+        {
+            // Skip parent sets that some pair of examples already shows to be inconsistent
+            if (!candidateParentSet.isEmpty()
+                    && varToWitnesses.computeIfAbsent(var,v -> new ConflictWitnesses(v,index,exampleSet,stopRequested)).rulesOut(candidateParentSet))
+            {
+                return null;
+            }
+            return CPNetLearningFromOptimalExamples.createCPTFromOptima(var, candidateParentSet, exampleSet, diagram);
+        };
+    }
+    // Learn by adding variables one at a time, asking the evaluator about each candidate parent set
+    static PreferenceSpecification learn(Set<String> allVars, Integer inDegreeBound, CandidateEvaluator<CPTable> evaluator)
+    {
+        LearningResult result = CPNetLearningFromOptimalExamples.learnWithin(allVars, inDegreeBound, evaluator, LearningOrders.arbitrary(), System.nanoTime(), null, -1);
+        if (result.isComplete())
+        {
+            return result.learned;
+        }
+        else
+        {
+            return null; // no appropriate CP-net found
+        }
+    }
+    // Same, but giving up early when a limit is reached (see learnAnytime); the timeout counts from startNanos
+    static LearningResult learnWithin(Set<String> allVars, Integer inDegreeBound, CandidateEvaluator<CPTable> evaluator, LearningOrder order, long startNanos, Duration timeout, long evaluationBudget)
     {
         // CP-net under construction
         PreferenceSpecification learned = new PreferenceSpecification(allVars);
+        LearningResult result = CPNetLearningFromOptimalExamples.learnWithin(allVars, inDegreeBound, evaluator, learned::setCPT, order, startNanos, timeout, evaluationBudget);
+        result.learned = learned;
+        return result;
+    }
+    // Same, for any kind of CP-table (see FiniteDomainLearner): each accepted table is handed to accept, and the result's
+    //  learned field is left null
+    static <T> LearningResult learnWithin(Set<String> allVars, Integer inDegreeBound, CandidateEvaluator<T> evaluator, BiConsumer<String,T> accept, LearningOrder order, long startNanos, Duration timeout, long evaluationBudget)
+    {
         // Features that have so far added to the CP-net
         HashSet<String> addedVars = new HashSet<String>();
+        // The same variables, in the order they were added
+        ArrayList<String> addedOrder = new ArrayList<String>();
+        long candidatesEvaluated = 0;
+        int round = 0;
 
         // Add variables to the CP-net one at a time
         // Consider increasing sizes of candidate parent sets
@@ -20,21 +122,59 @@ class CPNetLearningFromOptimalExamples
             while (!doneWithThisRound)
             {
                 doneWithThisRound = true;
-                for (String candidateAddition : allVars)
+                LearnRoundEvent roundEvent = new LearnRoundEvent();
+                roundEvent.begin();
+                roundEvent.round = round++;
+                roundEvent.variableCount = allVars.size();
+                roundEvent.addedBefore = addedVars.size();
+                long candidatesBeforeRound = candidatesEvaluated;
+                ArrayList<String> unaddedVars = new ArrayList<String>();
+                for (String var : allVars)
+                {
+                    if (!addedVars.contains(var))
+                    {
+                        unaddedVars.add(var);
+                    }
+                }
+                for (String candidateAddition : order.orderVariables(unaddedVars, addedOrder))
                 {
                     if (!addedVars.contains(candidateAddition))
                     {
                         boolean doneWithThisVar = false;
-                        // Consider size-i subsets as parent sets
+                        // Consider size-i subsets as parent sets (in hash set order, as learn() always has, unless the
+                        //  order reorders them)
                         for (int i = 0; i <= inDegreeBound; i++)
                         {
-                            for (Set<String> candidateParentSet : RecursivePowerKSet.computeKPowerSet(addedVars, i))
+                            Set<Set<String>> candidateParentSets = RecursivePowerKSet.computeKPowerSet(addedVars, i);
+                            for (Set<String> candidateParentSet : order.orderParentSets(candidateAddition, candidateParentSets, addedOrder))
                             {
-                                CPTable createdCPT = CPNetLearningFromOptimalExamples.createCPTFromOptima(candidateAddition, candidateParentSet, exampleSet);
+                                // Check the limits before each (potentially expensive) evaluation
+                                LearningResult.StopReason limitReached = null;
+                                if (Thread.currentThread().isInterrupted())
+                                {
+                                    limitReached = LearningResult.StopReason.INTERRUPTED;
+                                }
+                                else if (timeout != null && System.nanoTime() - startNanos >= timeout.toNanos())
+                                {
+                                    limitReached = LearningResult.StopReason.DEADLINE;
+                                }
+                                else if (evaluationBudget >= 0 && candidatesEvaluated >= evaluationBudget)
+                                {
+                                    limitReached = LearningResult.StopReason.BUDGET;
+                                }
+                                if (limitReached != null)
+                                {
+                                    CPNetLearningFromOptimalExamples.commitRound(roundEvent, addedVars.size(), candidatesEvaluated - candidatesBeforeRound);
+                                    return new LearningResult(null, allVars, addedVars, candidatesEvaluated, limitReached);
+                                }
+
+                                candidatesEvaluated++;
+                                T createdCPT = evaluator.evaluate(candidateAddition, candidateParentSet);
                                 if (createdCPT != null)
                                 {
-                                    learned.setCPT(candidateAddition, createdCPT);
+                                    accept.accept(candidateAddition, createdCPT);
                                     addedVars.add(candidateAddition);
+                                    addedOrder.add(candidateAddition);
                                     // The newly-added variable may become a parent for one that could not previously be added
                                     doneWithThisRound = false;
                                     doneWithThisVar = true;
@@ -48,64 +188,564 @@ class CPNetLearningFromOptimalExamples
                         }
                     }
                 }
+                CPNetLearningFromOptimalExamples.commitRound(roundEvent, addedVars.size(), candidatesEvaluated - candidatesBeforeRound);
             }
 
 
         if (addedVars.equals(allVars))
         {
-            return  learned;
+            return new LearningResult(null, allVars, addedVars, candidatesEvaluated, LearningResult.StopReason.COMPLETE);
         }
         else
         {
-            return null; // no appropriate CP-net found
+            return new LearningResult(null, allVars, addedVars, candidatesEvaluated, LearningResult.StopReason.NO_CONSISTENT_NET);
         }
     }
-    private static CPTable createCPTFromOptima(String var, Set<String> candidateParents, Set<OptimalExample> exampleSet)
+    // Helper function
+    private static void commitRound(LearnRoundEvent roundEvent, int addedAfter, long candidatesEvaluated)
     {
+        roundEvent.end();
+        if (roundEvent.shouldCommit())
+        {
+            roundEvent.addedAfter = addedAfter;
+            roundEvent.candidatesEvaluated = candidatesEvaluated;
+            roundEvent.commit();
+        }
+    }
+    // If diagram is not null and the parent set is consistent, the rows are also encoded into it
+    private static CPTable createCPTFromOptima(String var, Set<String> candidateParents, Set<OptimalExample> exampleSet, DecisionDiagram.Builder diagram)
+    {
+        CandidateEvaluationEvent event = new CandidateEvaluationEvent();
+        event.begin();
+        long examplesScanned = 0;
         CPTable created = new CPTable(var);
 
-        // See if the preferred value is consistent for each parent assignment
-        // e.g., if we're testing Entree and Wine as parents for Side, then each optimum with
-        //      conditions containing (Entree=Fish,Wine=Red) should have the same value for Side
-        //      (unless Side is also preassigned in the condition)
-        for (Assignment candidateParentAssignment : Assignment.allAssignments(candidateParents))
+        // Relevant examples are those that are not conditioned on the variable in question...
+        // ...and they can only match a parent assignment if their optimum assigns every candidate parent
+        // One pass groups them by their optima restricted to the candidate parents (as bits, bit j for the j-th parent
+        //  in name order), so each parent assignment only ever sees its own examples
+        ArrayList<String> parentList = new ArrayList<String>(new TreeSet<String>(candidateParents));
+        HashMap<Long,Boolean> chosenValByParentBits = new HashMap<Long,Boolean>();
+        for (OptimalExample example : exampleSet)
+        {
+            examplesScanned++;
+            if (example.condition.keySet().contains(var))
+            {
+                continue;
+            }
+            long parentBits = 0L;
+            boolean assignsParents = true;
+            for (int j = 0; j < parentList.size() && assignsParents; j++)
+            {
+                Boolean parentVal = example.optimum.get(parentList.get(j));
+                assignsParents = (parentVal != null);
+                if (Boolean.TRUE.equals(parentVal))
+                {
+                    parentBits |= (1L << j);
+                }
+            }
+            if (!assignsParents)
+            {
+                continue;
+            }
+
+            // See if the preferred value is consistent for each parent assignment
+            // e.g., if we're testing Entree and Wine as parents for Side, then each optimum with
+            //      conditions containing (Entree=Fish,Wine=Red) should have the same value for Side
+            //      (unless Side is also preassigned in the condition)
+            Boolean valInOptimum = example.optimum.get(var);
+            Boolean chosenVal = chosenValByParentBits.putIfAbsent(parentBits,valInOptimum);
+            if (chosenVal != null && !chosenVal.equals(valInOptimum))
+            {
+                CPNetLearningFromOptimalExamples.commitCandidate(event, var, candidateParents, examplesScanned, false);
+                return null;
+            }
+        }
+
+        // Fill in one row per observed parent assignment, then drop the parents the preferences turn out not to depend on
+        for (Map.Entry<Long,Boolean> row : chosenValByParentBits.entrySet())
+        {
+            if (row.getValue() == null)
+            {
+                continue;
+            }
+            Assignment parentAssignment = new Assignment();
+            for (int j = 0; j < parentList.size(); j++)
+            {
+                parentAssignment.put(parentList.get(j),(row.getKey() & (1L << j)) != 0);
+            }
+            created.put(parentAssignment,row.getValue());
+        }
+        created = created.normalized();
+        if (diagram != null)
+        {
+            diagram.setRows(var, parentList, chosenValByParentBits);
+        }
+
+        CPNetLearningFromOptimalExamples.commitCandidate(event, var, candidateParents, examplesScanned, true);
+        return created;
+        //todo: test
+    }
+    // Helper function
+    private static void commitCandidate(CandidateEvaluationEvent event, String var, Set<String> candidateParents, long examplesScanned, boolean accepted)
+    {
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.variable = var;
+            event.parentSetSize = candidateParents.size();
+            event.examplesScanned = examplesScanned;
+            event.accepted = accepted;
+            event.commit();
+        }
+    }
+
+}
+
+// What a learning run produced, including partial progress if it stopped early
+class LearningResult
+{
+    // Why the run ended
+    enum StopReason
+    {
+        COMPLETE,           // every variable was added
+        NO_CONSISTENT_NET,  // the search finished but some variables had no consistent parent set
+        DEADLINE,           // the timeout passed
+        BUDGET,             // the candidate-evaluation budget ran out
+        INTERRUPTED         // the learning thread was interrupted
+    }
+
+    // CP-net built so far (variables not yet added have empty CP-tables)
+    // Null for a finite-domain run, whose CP-net is the one given to FiniteDomainLearner.learnWithin
+    PreferenceSpecification learned;
+    // Variables that were not added
+    Set<String> unaddedVars;
+    // Number of candidate parent sets evaluated
+    long candidatesEvaluated;
+    StopReason stopReason;
+
+    // Constructor
+    public LearningResult(PreferenceSpecification learned, Set<String> allVars, Set<String> addedVars, long candidatesEvaluated, StopReason stopReason)
+    {
+        this.learned = learned;
+        this.unaddedVars = new HashSet<String>(allVars);
+        this.unaddedVars.removeAll(addedVars);
+        this.candidatesEvaluated = candidatesEvaluated;
+        this.stopReason = stopReason;
+    }
+
+    // Whether a complete CP-net was learned
+    public boolean isComplete()
+    {
+        return this.stopReason == StopReason.COMPLETE;
+    }
+
+    // Pretty string "stopReason: N candidates evaluated, unadded [...]"
+    @Override
+    public String toString()
+    {
+        return this.stopReason.toString().concat(": ").concat(String.valueOf(this.candidatesEvaluated))
+                .concat(" candidates evaluated, unadded ").concat(new TreeSet<String>(this.unaddedVars).toString());
+    }
+}
+
+// Decides whether a candidate parent set works for a variable during learning
+// T is the kind of CP-table made: CPTable for PreferenceSpecification, FiniteDomainCPT for FiniteDomainLearner
+interface CandidateEvaluator<T>
+{
+    // Return the CP-table for var with the given parents, or null if the parent set is rejected
+    T evaluate(String var, Set<String> candidateParents);
+}
+
+// Builds CP-tables from per-parent-assignment counts of the preferred values in the examples, tolerating some disagreement
+// The counts take one pass over the relevant examples; the examples' rows are kept for each prefix of the last parent
+//  list counted, so a candidate parent set sharing a prefix with it (by variable id) only has to fold in the rest
+// (At most k+1 row arrays are kept at a time, however many candidate parent sets are tried)
+class CountingCPTBuilder implements CandidateEvaluator<CPTable>
+{
+    private VariableIndex index;
+    // Fraction of relevant examples allowed to disagree with their row's majority value
+    private double maxDisagreement;
+    // Example -> bits of the variables that are true in its optimum
+    private ArrayList<BitSet> optimumValues;
+    // Example -> bits of the variables fixed by its condition
+    private ArrayList<BitSet> conditionedVars;
+
+    // Per-variable state, reset whenever a different variable is evaluated
+    private String currentVar;
+    // Examples that are not conditioned on the current variable
+    private int[] relevantExamples;
+    // Parent ids of the last parent list counted, and the row of each relevant example under each of its prefixes
+    //  (prefixRows.get(j) is for the first j parents)
+    private ArrayList<Integer> prefixParents;
+    private ArrayList<int[]> prefixRows;
+
+    // Constructor
+    public CountingCPTBuilder(Set<String> allVars, Set<OptimalExample> exampleSet, double maxDisagreement)
+    {
+        this.index = new VariableIndex(allVars);
+        this.maxDisagreement = maxDisagreement;
+        this.optimumValues = new ArrayList<BitSet>();
+        this.conditionedVars = new ArrayList<BitSet>();
+        for (OptimalExample example : exampleSet)
+        {
+            BitSet values = new BitSet(this.index.size());
+            BitSet conditioned = new BitSet(this.index.size());
+            for (int id = 0; id < this.index.size(); id++)
+            {
+                if (Boolean.TRUE.equals(example.optimum.get(this.index.name(id))))
+                {
+                    values.set(id);
+                }
+                if (example.condition.containsKey(this.index.name(id)))
+                {
+                    conditioned.set(id);
+                }
+            }
+            this.optimumValues.add(values);
+            this.conditionedVars.add(conditioned);
+        }
+    }
+
+    @Override
+    public CPTable evaluate(String var, Set<String> candidateParents)
+    {
+        int varId = this.index.id(var);
+        if (!var.equals(this.currentVar))
+        {
+            this.startVar(var,varId);
+        }
+
+        // Parent ids in ascending order; bit j of a row is the value of the j-th parent
+        TreeSet<Integer> sortedParents = new TreeSet<Integer>();
+        for (String parent : candidateParents)
+        {
+            sortedParents.add(this.index.id(parent));
+        }
+        ArrayList<Integer> parentIds = new ArrayList<Integer>(sortedParents);
+        int[] rows = this.rowsFor(parentIds);
+
+        // Count preferred values per row
+        int[] trueCounts = new int[1 << parentIds.size()];
+        int[] falseCounts = new int[1 << parentIds.size()];
+        for (int i = 0; i < this.relevantExamples.length; i++)
+        {
+            if (this.optimumValues.get(this.relevantExamples[i]).get(varId))
+            {
+                trueCounts[rows[i]]++;
+            }
+            else
+            {
+                falseCounts[rows[i]]++;
+            }
+        }
+
+        // Accept if few enough examples disagree with their row's majority
+        int disagreements = 0;
+        for (int row = 0; row < trueCounts.length; row++)
         {
-            Boolean chosenVal = null;
-            for (OptimalExample example : exampleSet)
+            disagreements += Math.min(trueCounts[row],falseCounts[row]);
+        }
+        if (disagreements > this.maxDisagreement * this.relevantExamples.length)
+        {
+            return null;
+        }
+
+        CPTable created = new CPTable(var);
+        for (int row = 0; row < trueCounts.length; row++)
+        {
+            if (trueCounts[row] + falseCounts[row] > 0)
             {
-                // Relevant examples are those that are not conditioned on the variable in question...
-                if (example.condition.keySet().contains(var))
+                Assignment parentAssignment = new Assignment();
+                for (int j = 0; j < parentIds.size(); j++)
                 {
-                    continue;
+                    parentAssignment.put(this.index.name(parentIds.get(j)),(row & (1 << j)) != 0);
                 }
-                // ...and the example contains the parent assignment
-                if (!example.optimum.subsumes(candidateParentAssignment))
+                created = created.altered(parentAssignment,trueCounts[row] >= falseCounts[row]);
+            }
+        }
+        return created;
+    }
+    // Helper function
+    private void startVar(String var, int varId)
+    {
+        this.currentVar = var;
+        this.prefixParents = new ArrayList<Integer>();
+        this.prefixRows = new ArrayList<int[]>();
+        ArrayList<Integer> relevant = new ArrayList<Integer>();
+        for (int e = 0; e < this.optimumValues.size(); e++)
+        {
+            if (!this.conditionedVars.get(e).get(varId))
+            {
+                relevant.add(e);
+            }
+        }
+        this.relevantExamples = new int[relevant.size()];
+        for (int i = 0; i < relevant.size(); i++)
+        {
+            this.relevantExamples[i] = relevant.get(i);
+        }
+    }
+    // Helper function
+    // Row of each relevant example for the given parent ids, reusing the rows of the prefix shared with the last list
+    private int[] rowsFor(List<Integer> parentIds)
+    {
+        if (this.prefixRows.isEmpty())
+        {
+            this.prefixRows.add(new int[this.relevantExamples.length]);
+        }
+        // Keep the longest common prefix, then fold in the remaining parents one bit at a time
+        int shared = 0;
+        while (shared < parentIds.size() && shared < this.prefixParents.size() && parentIds.get(shared).equals(this.prefixParents.get(shared)))
+        {
+            shared++;
+        }
+        while (this.prefixParents.size() > shared)
+        {
+            this.prefixParents.remove(this.prefixParents.size() - 1);
+            this.prefixRows.remove(this.prefixRows.size() - 1);
+        }
+        for (int j = shared; j < parentIds.size(); j++)
+        {
+            int[] previousRows = this.prefixRows.get(j);
+            int parent = parentIds.get(j);
+            int[] rows = new int[this.relevantExamples.length];
+            for (int i = 0; i < rows.length; i++)
+            {
+                rows[i] = previousRows[i] | (this.optimumValues.get(this.relevantExamples[i]).get(parent) ? (1 << j) : 0);
+            }
+            this.prefixParents.add(parent);
+            this.prefixRows.add(rows);
+        }
+        return this.prefixRows.get(parentIds.size());
+    }
+}
+
+// Precomputed conflicts among the examples for a single variable
+// Each witness is a pair of relevant examples (not conditioned on the variable) whose optima disagree on the variable,
+//  stored as the set of variables on which the two optima agree
+// A candidate parent set is inconsistent with the examples iff it is contained in one of these agreement sets,
+//  since both examples then match the same parent assignment but prefer different values
+// Only pairs across the two sides (optimum true / false for the variable) are compared, after merging examples with
+//  the same optimum; past MAX_PAIRS such pairs, a fixed-seed sample of MAX_PAIRS is used instead
+// Cost: O(min(t f, MAX_PAIRS) n / 64) for t and f distinct optima per side over n variables, plus keeping the maximal
+//  masks, which are indexed by variable so that a mask is only checked against masks sharing its rarest variable
+// The witnesses are only a filter: a sampled-out pair just means a candidate goes on to createCPTFromOptima, which
+//  detects every conflict in O(m) per candidate parent set
+class ConflictWitnesses
+{
+    // Most pairs of distinct optima compared per variable
+    static final int MAX_PAIRS = 1 << 16;
+
+    // Variable ids, which double as bit positions in the agreement masks
+    private VariableIndex index;
+    // Variable id -> maximal agreement masks containing it (a subset of a mask rules out nothing new)
+    private ArrayList<ArrayList<BitSet>> bitToMasks;
+    // Number of relevant examples with the variable true / false in their optimum
+    private long numTrue = 0;
+    private long numFalse = 0;
+    // Whether construction was cut short, in which case nothing is ruled out
+    private boolean abandoned = false;
+
+    // Constructor
+    public ConflictWitnesses(String var, VariableIndex index, Set<OptimalExample> exampleSet)
+    {
+        this(var,index,exampleSet,() -> false);
+    }
+    // Version that gives up (ruling nothing out) as soon as stopRequested says so, checked once per optimum compared
+    public ConflictWitnesses(String var, VariableIndex index, Set<OptimalExample> exampleSet, BooleanSupplier stopRequested)
+    {
+        this.index = index;
+        this.bitToMasks = new ArrayList<ArrayList<BitSet>>();
+        for (int bit = 0; bit < index.size(); bit++)
+        {
+            this.bitToMasks.add(new ArrayList<BitSet>());
+        }
+
+        // Split the relevant optima by their value for the variable, as (assigned variables, true variables) bit pairs
+        LinkedHashSet<List<BitSet>> trueSide = new LinkedHashSet<List<BitSet>>();
+        LinkedHashSet<List<BitSet>> falseSide = new LinkedHashSet<List<BitSet>>();
+        for (OptimalExample example : exampleSet)
+        {
+            Boolean value = example.optimum.get(var);
+            if (example.condition.containsKey(var) || value == null)
+            {
+                continue;
+            }
+            BitSet assigned = new BitSet(index.size());
+            BitSet values = new BitSet(index.size());
+            for (Map.Entry<String,Boolean> entry : example.optimum.entrySet())
+            {
+                int bit = index.id(entry.getKey());
+                if (bit >= 0)
                 {
-                    continue;
+                    assigned.set(bit);
+                    values.set(bit,entry.getValue());
                 }
+            }
+            if (value)
+            {
+                this.numTrue++;
+                trueSide.add(Arrays.asList(assigned,values));
+            }
+            else
+            {
+                this.numFalse++;
+                falseSide.add(Arrays.asList(assigned,values));
+            }
+        }
 
-                // Get the hypothetical preferred value of var given candidateParentAssignment
-                Boolean valInOptimum = example.optimum.get(var);
-                if (chosenVal == null)
+        // Agreement masks of the cross pairs (all of them, or a sample), merging duplicates
+        ArrayList<List<BitSet>> trueOptima = new ArrayList<List<BitSet>>(trueSide);
+        ArrayList<List<BitSet>> falseOptima = new ArrayList<List<BitSet>>(falseSide);
+        HashSet<BitSet> masks = new HashSet<BitSet>();
+        if ((long) trueOptima.size() * falseOptima.size() <= MAX_PAIRS)
+        {
+            for (List<BitSet> first : trueOptima)
+            {
+                if (stopRequested.getAsBoolean())
                 {
-                    chosenVal = valInOptimum;
+                    this.abandon();
+                    return;
                 }
-                // Check whether the examples are consistent with this being the preferred value
-                else if (!chosenVal.equals(valInOptimum))
+                for (List<BitSet> second : falseOptima)
                 {
-                    return null;
+                    masks.add(ConflictWitnesses.agreement(first,second));
                 }
             }
-            if (chosenVal != null)
+        }
+        else
+        {
+            Random rng = new Random(0);
+            for (int pair = 0; pair < MAX_PAIRS; pair++)
             {
-                created = created.altered(candidateParentAssignment,chosenVal);
+                if (pair % 1024 == 0 && stopRequested.getAsBoolean())
+                {
+                    this.abandon();
+                    return;
+                }
+                masks.add(ConflictWitnesses.agreement(trueOptima.get(rng.nextInt(trueOptima.size())),falseOptima.get(rng.nextInt(falseOptima.size()))));
             }
         }
 
-        return created;
-        //todo: test
+        // Keep the maximal masks: largest first, so a mask can only be contained in one already kept, and only in
+        //  one that also has the mask's rarest variable
+        ArrayList<BitSet> sortedMasks = new ArrayList<BitSet>(masks);
+        sortedMasks.sort(Comparator.comparing((BitSet mask) -> -mask.cardinality()));
+        for (BitSet mask : sortedMasks)
+        {
+            if (mask.isEmpty() || this.containedInKept(mask))
+            {
+                continue; // (an empty mask rules out only the empty parent set, which rulesOut handles directly)
+            }
+            for (int bit = mask.nextSetBit(0); bit >= 0; bit = mask.nextSetBit(bit + 1))
+            {
+                this.bitToMasks.get(bit).add(mask);
+            }
+        }
+    }
+    // Helper function
+    private void abandon()
+    {
+        this.abandoned = true;
+        for (ArrayList<BitSet> kept : this.bitToMasks)
+        {
+            kept.clear();
+        }
+    }
+    // Helper function
+    // Variables that both optima assign, with the same value
+    private static BitSet agreement(List<BitSet> first, List<BitSet> second)
+    {
+        BitSet agreement = (BitSet) first.get(0).clone();
+        agreement.and(second.get(0));
+        BitSet differing = (BitSet) first.get(1).clone();
+        differing.xor(second.get(1));
+        agreement.andNot(differing);
+        return agreement;
+    }
+    // Helper function
+    // Whether a non-empty mask is contained in a kept mask, checking only the kept masks with its rarest variable
+    private boolean containedInKept(BitSet mask)
+    {
+        ArrayList<BitSet> candidates = null;
+        for (int bit = mask.nextSetBit(0); bit >= 0; bit = mask.nextSetBit(bit + 1))
+        {
+            if (candidates == null || this.bitToMasks.get(bit).size() < candidates.size())
+            {
+                candidates = this.bitToMasks.get(bit);
+            }
+        }
+        for (BitSet kept : candidates)
+        {
+            if (ConflictWitnesses.isSubset(mask,kept))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    // Helper function
+    private static boolean isSubset(BitSet sub, BitSet sup)
+    {
+        BitSet outside = (BitSet) sub.clone();
+        outside.andNot(sup);
+        return outside.isEmpty();
     }
 
+    // Return true iff some pair of examples shows that the given parent set cannot yield a consistent CP-table
+    // (Always exact for the empty parent set; otherwise exact unless the pairs were sampled or construction gave up,
+    //  when it may miss conflicts but never reports a false one)
+    public boolean rulesOut(Set<String> candidateParents)
+    {
+        if (this.abandoned)
+        {
+            return false;
+        }
+        if (candidateParents.isEmpty())
+        {
+            return this.numConflictingPairs() > 0;
+        }
+        BitSet parentMask = new BitSet(this.index.size());
+        for (String parent : candidateParents)
+        {
+            int bit = this.index.id(parent);
+            if (bit < 0)
+            {
+                return false; // not a known variable, leave it to the full check
+            }
+            parentMask.set(bit);
+        }
+        return this.containedInKept(parentMask);
+    }
+
+    // Number of pairs of relevant examples that disagree on the variable
+    public long numConflictingPairs()
+    {
+        return this.numTrue * this.numFalse;
+    }
+    // Same, without building any witnesses
+    static long numConflictingPairs(String var, Set<OptimalExample> exampleSet)
+    {
+        long numTrue = 0;
+        long numFalse = 0;
+        for (OptimalExample example : exampleSet)
+        {
+            Boolean value = example.optimum.get(var);
+            if (!example.condition.containsKey(var) && value != null)
+            {
+                if (value)
+                {
+                    numTrue++;
+                }
+                else
+                {
+                    numFalse++;
+                }
+            }
+        }
+        return numTrue * numFalse;
+    }
 }
 
 // Indication that an outcome is a most-preferred (undominated) one, possibly given some preset variables
@@ -133,11 +773,16 @@ class OptimalExample
     // Samples uniformly at random from the space of all optimal examples
     // Assumes that the input is a complete acyclic CP-net
     static OptimalExample uniformlyRandomExample(PreferenceSpecification acyclicCPnet)
+    {
+        return OptimalExample.uniformlyRandomExample(acyclicCPnet,new Random());
+    }
+    // Version with a caller-supplied (e.g., seeded) random number generator
+    // Variables are visited in name order so that a seed always gives the same example
+    static OptimalExample uniformlyRandomExample(PreferenceSpecification acyclicCPnet, Random rng)
     {
         // Preset the condition by assigning each preference variable to true, false, or not-conditioned
         Assignment condition = new Assignment();
-        Random rng = new Random();
-        for (String var : acyclicCPnet.getVars())
+        for (String var : new TreeSet<String>(acyclicCPnet.getVars()))
         {
             int choice = rng.nextInt(3);
             if (choice == 0)
@@ -156,11 +801,16 @@ class OptimalExample
     }
     // Random generation from a different distribution --- specify probability that each variable appears in the condition
     static OptimalExample biasedRandomExample(PreferenceSpecification acyclicCPnet, float prob)
+    {
+        return OptimalExample.biasedRandomExample(acyclicCPnet,prob,new Random());
+    }
+    // Version with a caller-supplied (e.g., seeded) random number generator
+    // Variables are visited in name order so that a seed always gives the same example
+    static OptimalExample biasedRandomExample(PreferenceSpecification acyclicCPnet, float prob, Random rng)
     {
         // Preset the condition by assigning each preference variable to true, false, or not-conditioned
         Assignment condition = new Assignment();
-        Random rng = new Random();
-        for (String var : acyclicCPnet.getVars())
+        for (String var : new TreeSet<String>(acyclicCPnet.getVars()))
         {
             float roll = rng.nextFloat();
             if (roll < prob)
@@ -172,6 +822,26 @@ class OptimalExample
         // Find the best outcome given the conditoin
         return optimumGiven(acyclicCPnet,condition);
     }
+    // Find the optimal example for each of many conditions at once, using the snapshot's batch sweep
+    // Assumes that the input is a complete acyclic CP-net
+    static List<OptimalExample> optimaGiven(FrozenPreferenceSpecification acyclicCPnet, List<Assignment> conditions)
+    {
+        VariableIndex index = acyclicCPnet.getVariableIndex();
+        long[] assignedMasks = new long[conditions.size()];
+        long[] values = new long[conditions.size()];
+        for (int i = 0; i < conditions.size(); i++)
+        {
+            assignedMasks[i] = index.assignedMask(conditions.get(i));
+            values[i] = index.pack(conditions.get(i));
+        }
+        long[] optima = acyclicCPnet.optimaGivenParallel(assignedMasks,values,1024);
+        ArrayList<OptimalExample> examples = new ArrayList<OptimalExample>();
+        for (int i = 0; i < conditions.size(); i++)
+        {
+            examples.add(new OptimalExample(conditions.get(i),index.unpack(optima[i])));
+        }
+        return examples;
+    }
     // Helper function
     private static OptimalExample optimumGiven(PreferenceSpecification acyclicCPnet, Assignment condition)
     {
@@ -189,7 +859,7 @@ class OptimalExample
                 if (optimumSoFar.keySet().containsAll(
                         acyclicCPnet.getCPT(var).getParents()))
                 {
-                    Boolean preferredValue = acyclicCPnet.getCPT(var).preferredValueGiven(optimumSoFar);
+                    Boolean preferredValue = acyclicCPnet.preferredValueGiven(var,optimumSoFar);
                     if (preferredValue==null)
                     {
                         throw new RuntimeException("missing preference data; complete CP-net input expected");
@@ -243,7 +913,7 @@ class RecursivePowerKSet
     {
         if (k==0 || source.size() < k) {
             Set<Set<E>> set = new HashSet<Set<E>>();
-            set.add(Collections.EMPTY_SET);
+            set.add(Collections.<E>emptySet());
             return set;
         }
 
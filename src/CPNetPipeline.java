@@ -0,0 +1,240 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Command-line batch pipeline: generate or load CP-nets, sample optimal examples, learn, write, and evaluate,
+//  running many jobs in one JVM so warm-up is paid once
+// Usage: CPNetPipeline [--threads N] (--jobs FILE | JOB)
+//  where FILE ("-" for stdin) has one job per line (blank lines and lines starting with # are skipped) and a job is a
+//  list of stages separated by ';', each a stage name followed by key=value options:
+//    generate vars=10 degree=2 seed=0      random reference net (PreferenceSpecification.random)
+//    load in=net.xml                       reference net from XML, or from the binary format for other extensions
+//    sample n=100 seed=0                   optimal examples of the reference net (LearningEvaluation.sample)
+//    learn degree=2 order=arbitrary        learn from the examples (order: arbitrary, fewestConflictsFirst,
+//                                           recentParentsFirst, or mutualInformation)
+//    write out=net.cpnb net=learned        write the learned (default) or reference net; XML for .xml files,
+//                                           otherwise the binary format (PreferenceSpecification.writeBinary)
+//    evaluate heldout=1000 seed=1          score the learned net on examples of the reference net
+//  e.g. CPNetPipeline "generate vars=10 degree=2 seed=4; sample n=100 seed=5; learn degree=2; evaluate heldout=1000 seed=6"
+// Prints one CSV row per job, in job order; a failed job gets its error message instead, as one quoted field
+// For short jobs most of the time is JVM startup; a class-data-sharing archive recorded on one run cuts it down
+//  (the classes must come from a jar, since the JVM does not archive classes from directories):
+//    jar cf cpnet.jar -C out .
+//    java -XX:ArchiveClassesAtExit=cpnet.jsa -cp cpnet.jar CPNetPipeline --jobs warmup.jobs
+//    java -XX:SharedArchiveFile=cpnet.jsa -cp cpnet.jar CPNetPipeline --jobs experiment.jobs
+//  (adding -XX:TieredStopAtLevel=1 also helps jobs that finish in well under a second)
+class CPNetPipeline
+{
+    static final String CSV_HEADER = "job,vars,examples,complete,candidatesEvaluated,agreement,meanVariableError,equivalent,millis";
+
+    // What a job has produced so far
+    private PreferenceSpecification reference = null;
+    private List<OptimalExample> examples = null;
+    private LearningResult result = null;
+    private LearningEvaluation evaluation = null;
+
+    // Run one job and return its CSV row
+    static String run(int jobID, String job)
+    {
+        long start = System.nanoTime();
+        CPNetPipeline state = new CPNetPipeline();
+        try
+        {
+            for (String stage : job.split(";"))
+            {
+                if (!stage.trim().isEmpty())
+                {
+                    state.runStage(stage.trim());
+                }
+            }
+            String equivalent = (state.evaluation == null) ? ""
+                    : String.valueOf(CPNetDiff.diff(state.reference,state.result.learned).isEquivalent());
+            long millis = (System.nanoTime() - start) / 1000000;
+            return String.join(",",String.valueOf(jobID),
+                    (state.reference == null) ? "" : String.valueOf(state.reference.getVars().size()),
+                    (state.examples == null) ? "" : String.valueOf(state.examples.size()),
+                    (state.result == null) ? "" : String.valueOf(state.result.isComplete()),
+                    (state.result == null) ? "" : String.valueOf(state.result.candidatesEvaluated),
+                    (state.evaluation == null) ? "" : String.format("%.4f",state.evaluation.agreement()),
+                    (state.evaluation == null) ? "" : String.format("%.4f",state.evaluation.meanErrorRate()),
+                    equivalent,
+                    String.valueOf(millis));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // Messages can contain commas, quotes, or line breaks (e.g. a file name), so the field is quoted
+            String message = (e.getMessage() == null) ? e.getClass().getSimpleName() : e.getMessage();
+            return String.format("%d,\"error: %s\"",jobID,message.replace("\"","\"\""));
+        }
+    }
+    // Helper function
+    private void runStage(String stage) throws IOException
+    {
+        String[] tokens = stage.split("\\s+");
+        HashMap<String,String> options = new HashMap<String,String>();
+        for (int i = 1; i < tokens.length; i++)
+        {
+            String[] option = tokens[i].split("=",2);
+            if (option.length != 2)
+            {
+                throw new RuntimeException("expected key=value option: ".concat(tokens[i]));
+            }
+            options.put(option[0],option[1]);
+        }
+
+        switch (tokens[0])
+        {
+            case "generate":
+                this.reference = PreferenceSpecification.random(CPNetPipeline.intOption(options,"degree",2),
+                        CPNetPipeline.intOption(options,"vars",10),new Random(CPNetPipeline.intOption(options,"seed",0)));
+                break;
+            case "load":
+                String in = this.required(options.get("in"),"in option");
+                this.reference = in.endsWith(".xml") ? new PreferenceSpecification(in) : PreferenceSpecification.readBinary(in);
+                break;
+            case "sample":
+                this.examples = LearningEvaluation.sample(this.required(this.reference,"reference net"),
+                        CPNetPipeline.intOption(options,"n",100),CPNetPipeline.intOption(options,"seed",0));
+                break;
+            case "learn":
+                HashSet<OptimalExample> exampleSet = new HashSet<OptimalExample>(this.required(this.examples,"examples"));
+                HashSet<String> allVars = new HashSet<String>(this.required(this.reference,"reference net").getVars());
+                this.result = CPNetLearningFromOptimalExamples.learn(allVars,exampleSet,CPNetPipeline.intOption(options,"degree",2),
+                        CPNetPipeline.order(CPNetPipeline.option(options,"order","arbitrary"),allVars,exampleSet));
+                break;
+            case "write":
+                String out = this.required(options.get("out"),"out option");
+                String which = CPNetPipeline.option(options,"net",(this.result == null) ? "reference" : "learned");
+                PreferenceSpecification net;
+                switch (which)
+                {
+                    case "reference":
+                        net = this.required(this.reference,"reference net");
+                        break;
+                    case "learned":
+                        net = this.required(this.result,"learned net").learned;
+                        break;
+                    default:
+                        throw new RuntimeException("unknown net: ".concat(which));
+                }
+                if (out.endsWith(".xml"))
+                {
+                    net.writeXML(out);
+                }
+                else
+                {
+                    net.writeBinary(out);
+                }
+                break;
+            case "evaluate":
+                this.evaluation = LearningEvaluation.of(this.required(this.result,"learned net").learned,
+                        this.required(this.reference,"reference net"),
+                        CPNetPipeline.intOption(options,"heldout",1000),CPNetPipeline.intOption(options,"seed",1));
+                break;
+            default:
+                throw new RuntimeException("unknown stage: ".concat(tokens[0]));
+        }
+    }
+    // Helper function
+    private <T> T required(T value, String what)
+    {
+        if (value == null)
+        {
+            throw new RuntimeException("no ".concat(what).concat(" for this stage"));
+        }
+        return value;
+    }
+    // Helper function
+    private static String option(Map<String,String> options, String key, String defaultValue)
+    {
+        String value = options.getOrDefault(key,defaultValue);
+        if (value == null)
+        {
+            throw new RuntimeException("missing option: ".concat(key));
+        }
+        return value;
+    }
+    // Helper function
+    private static int intOption(Map<String,String> options, String key, int defaultValue)
+    {
+        return Integer.parseInt(CPNetPipeline.option(options,key,String.valueOf(defaultValue)));
+    }
+    // Helper function
+    private static LearningOrder order(String name, Set<String> allVars, Set<OptimalExample> exampleSet)
+    {
+        switch (name)
+        {
+            case "arbitrary":
+                return LearningOrders.arbitrary();
+            case "fewestConflictsFirst":
+                return LearningOrders.fewestConflictsFirst(allVars,exampleSet);
+            case "recentParentsFirst":
+                return LearningOrders.recentParentsFirst();
+            case "mutualInformation":
+                return LearningOrders.mutualInformation(allVars,exampleSet);
+            default:
+                throw new RuntimeException("unknown learning order: ".concat(name));
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        String jobFile = null;
+        StringBuilder job = new StringBuilder();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--threads"))
+            {
+                numThreads = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--jobs"))
+            {
+                jobFile = args[++i];
+            }
+            else
+            {
+                job.append(args[i]).append(' ');
+            }
+        }
+        ArrayList<String> jobs = new ArrayList<String>();
+        if (jobFile == null)
+        {
+            jobs.add(job.toString());
+        }
+        else
+        {
+            try (BufferedReader in = new BufferedReader(jobFile.equals("-") ? new InputStreamReader(System.in) : new FileReader(jobFile)))
+            {
+                String line;
+                while ((line = in.readLine()) != null)
+                {
+                    if (!line.trim().isEmpty() && !line.trim().startsWith("#"))
+                    {
+                        jobs.add(line);
+                    }
+                }
+            }
+        }
+
+        // Jobs go through a fixed pool of workers; rows are printed in job order as they become available
+        ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+        ArrayList<Future<String>> rows = new ArrayList<Future<String>>();
+        for (int i = 0; i < jobs.size(); i++)
+        {
+            final int jobID = i;
+            rows.add(workers.submit(() -> CPNetPipeline.run(jobID,jobs.get(jobID))));
+        }
+        System.out.println(CSV_HEADER);
+        for (Future<String> row : rows)
+        {
+            System.out.println(row.get());
+        }
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,341 @@
+import java.util.*;
+
+// Compressed encoding of a CP-net's CP-tables as reduced ordered decision diagrams, made by
+//  PreferenceSpecification.compress() or directly by the learner (CPNetLearningFromOptimalExamples.learnCompressed)
+// Each CP-table becomes a diagram whose internal nodes test one parent and whose leaves are the preferred value (or
+//  MISSING for incomplete tables); variables are tested in VariableIndex order
+// All tables share one unique-node table, so a sub-table that appears in several places (within or across tables) is
+//  stored once, and a table takes space proportional to its real structure rather than 2^k rows
+// A lookup walks at most one node per parent
+// Like FrozenPreferenceSpecification, this is a snapshot: later changes to the source net do not show up here
+class DecisionDiagram
+{
+    // Leaf node ids (the same values as CompiledCPT's row entries, so a leaf id is the lookup result)
+    static final int FALSE = CompiledCPT.FALSE;
+    static final int TRUE = CompiledCPT.TRUE;
+    static final int MISSING = 2;
+    private static final int NUM_LEAVES = 3;
+
+    private final VariableIndex index;
+    // Variable id -> root node of its CP-table
+    private final int[] roots;
+    // Internal node id -> tested variable id, and the child followed when it is false / true
+    private final int[] nodeVar;
+    private final int[] nodeLow;
+    private final int[] nodeHigh;
+
+    // Constructor
+    DecisionDiagram(PreferenceSpecification original)
+    {
+        this(new Builder(original.getVars()).setTables(original));
+    }
+    // Constructor for a finished builder (the builder may go on to make more diagrams)
+    private DecisionDiagram(Builder builder)
+    {
+        this.index = builder.index;
+        this.roots = builder.roots.clone();
+        this.nodeVar = Arrays.copyOf(builder.nodeVar,builder.numNodes);
+        this.nodeLow = Arrays.copyOf(builder.nodeLow,builder.numNodes);
+        this.nodeHigh = Arrays.copyOf(builder.nodeHigh,builder.numNodes);
+    }
+
+    // Accumulates the CP-tables of a diagram one variable at a time, either from CPTables or straight from per-row
+    //  preferred values (as the learner finds them), so a table never has to exist as rows of Assignments first
+    // Variables that are never given a table get an empty one (every lookup MISSING)
+    static class Builder
+    {
+        private final VariableIndex index;
+        private final int[] roots;
+        private int[] nodeVar = new int[64];
+        private int[] nodeLow = new int[64];
+        private int[] nodeHigh = new int[64];
+        private int numNodes = NUM_LEAVES;
+        // (variable, low, high) -> node id, so no two nodes are the same
+        private final HashMap<Long,Integer> uniqueNodes = new HashMap<Long,Integer>();
+
+        // Constructor
+        Builder(Set<String> varSet)
+        {
+            this.index = new VariableIndex(varSet);
+            if (this.index.size() > (1 << 16))
+            {
+                throw new RuntimeException("too many preference variables for a decision diagram");
+            }
+            this.roots = new int[this.index.size()];
+            Arrays.fill(this.roots,MISSING);
+        }
+
+        // Encode every CP-table of the given CP-net
+        Builder setTables(PreferenceSpecification original)
+        {
+            for (String var : original.getVars())
+            {
+                this.setTable(var,original.getCPT(var));
+            }
+            return this;
+        }
+        // Encode one CP-table
+        Builder setTable(String var, CPTable table)
+        {
+            TreeSet<Integer> parentIds = new TreeSet<Integer>();
+            for (String parent : table.getParents())
+            {
+                parentIds.add(this.parentId(parent));
+            }
+            this.roots[this.varId(var)] = this.encode(new ArrayList<Map.Entry<Assignment,Boolean>>(table.entrySet()),
+                    new ArrayList<Integer>(parentIds),0);
+            return this;
+        }
+        // Encode one CP-table given as parent assignment bits -> preferred value, where bit j is the value of the j-th
+        //  parent in the given list (which must be in name order, like the learner's); null values are missing rows
+        Builder setRows(String var, List<String> parents, Map<Long,Boolean> rows)
+        {
+            ArrayList<Integer> parentIds = new ArrayList<Integer>();
+            for (String parent : parents)
+            {
+                int id = this.parentId(parent);
+                if (!parentIds.isEmpty() && id <= parentIds.get(parentIds.size() - 1))
+                {
+                    throw new RuntimeException("parents must be listed in name order");
+                }
+                parentIds.add(id);
+            }
+            ArrayList<Map.Entry<Long,Boolean>> presentRows = new ArrayList<Map.Entry<Long,Boolean>>();
+            for (Map.Entry<Long,Boolean> row : rows.entrySet())
+            {
+                if (row.getValue() != null)
+                {
+                    presentRows.add(row);
+                }
+            }
+            this.roots[this.varId(var)] = this.encodeRows(presentRows,parentIds,0);
+            return this;
+        }
+
+        // Make the diagram for the tables set so far
+        DecisionDiagram build()
+        {
+            return new DecisionDiagram(this);
+        }
+
+        // Helper function
+        private int varId(String var)
+        {
+            int id = this.index.id(var);
+            if (id < 0)
+            {
+                throw new RuntimeException("unknown preference variable");
+            }
+            return id;
+        }
+        // Helper function
+        private int parentId(String parent)
+        {
+            int id = this.index.id(parent);
+            if (id < 0)
+            {
+                throw new RuntimeException("CP-table refers to an unknown preference variable");
+            }
+            return id;
+        }
+        // Helper function
+        // Diagram for the statements that agree with the path so far, testing parents[depth] next
+        // As in CPTable.preferredValueGiven, a statement that does not mention a parent applies whatever its value
+        private int encode(List<Map.Entry<Assignment,Boolean>> statements, List<Integer> parents, int depth)
+        {
+            if (statements.isEmpty())
+            {
+                return MISSING;
+            }
+            if (depth == parents.size())
+            {
+                return statements.get(0).getValue() ? TRUE : FALSE;
+            }
+            String parent = this.index.name(parents.get(depth));
+            ArrayList<Map.Entry<Assignment,Boolean>> lowStatements = new ArrayList<Map.Entry<Assignment,Boolean>>();
+            ArrayList<Map.Entry<Assignment,Boolean>> highStatements = new ArrayList<Map.Entry<Assignment,Boolean>>();
+            for (Map.Entry<Assignment,Boolean> statement : statements)
+            {
+                Boolean parentVal = statement.getKey().get(parent);
+                if (parentVal == null || !parentVal)
+                {
+                    lowStatements.add(statement);
+                }
+                if (parentVal == null || parentVal)
+                {
+                    highStatements.add(statement);
+                }
+            }
+            int low = this.encode(lowStatements,parents,depth + 1);
+            int high = this.encode(highStatements,parents,depth + 1);
+            return this.node(parents.get(depth),low,high);
+        }
+        // Helper function
+        // Same for rows given as bits, splitting on bit depth
+        private int encodeRows(List<Map.Entry<Long,Boolean>> rows, List<Integer> parents, int depth)
+        {
+            if (rows.isEmpty())
+            {
+                return MISSING;
+            }
+            if (depth == parents.size())
+            {
+                return rows.get(0).getValue() ? TRUE : FALSE;
+            }
+            ArrayList<Map.Entry<Long,Boolean>> lowRows = new ArrayList<Map.Entry<Long,Boolean>>();
+            ArrayList<Map.Entry<Long,Boolean>> highRows = new ArrayList<Map.Entry<Long,Boolean>>();
+            for (Map.Entry<Long,Boolean> row : rows)
+            {
+                if ((row.getKey() & (1L << depth)) != 0)
+                {
+                    highRows.add(row);
+                }
+                else
+                {
+                    lowRows.add(row);
+                }
+            }
+            int low = this.encodeRows(lowRows,parents,depth + 1);
+            int high = this.encodeRows(highRows,parents,depth + 1);
+            return this.node(parents.get(depth),low,high);
+        }
+        // Helper function
+        // The unique node testing var with the given children (none at all if the test makes no difference)
+        private int node(int var, int low, int high)
+        {
+            if (low == high)
+            {
+                return low;
+            }
+            long key = ((long) var << 48) | ((long) low << 24) | high;
+            Integer existing = this.uniqueNodes.get(key);
+            if (existing != null)
+            {
+                return existing;
+            }
+            if (this.numNodes == (1 << 24))
+            {
+                throw new RuntimeException("decision diagram too large");
+            }
+            if (this.numNodes == this.nodeVar.length)
+            {
+                this.nodeVar = Arrays.copyOf(this.nodeVar,2 * this.numNodes);
+                this.nodeLow = Arrays.copyOf(this.nodeLow,2 * this.numNodes);
+                this.nodeHigh = Arrays.copyOf(this.nodeHigh,2 * this.numNodes);
+            }
+            int id = this.numNodes++;
+            this.nodeVar[id] = var;
+            this.nodeLow[id] = low;
+            this.nodeHigh[id] = high;
+            this.uniqueNodes.put(key,id);
+            return id;
+        }
+    }
+
+    // Get the variable ids used for outcome words
+    public VariableIndex getVariableIndex()
+    {
+        return this.index;
+    }
+
+    // Return the preferred value of the variable given the condition (null if the CP-table has no such entry)
+    // Like CPTable.preferredValueGiven, the condition must assign all of the variable's (relevant) parents
+    public Boolean preferredValueGiven(String var, Assignment condition)
+    {
+        int node = this.roots[this.varId(var)];
+        while (node >= NUM_LEAVES)
+        {
+            Boolean parentVal = condition.get(this.index.name(this.nodeVar[node]));
+            if (parentVal == null)
+            {
+                throw new RuntimeException("invalid CP-table lookup");
+            }
+            node = parentVal ? this.nodeHigh[node] : this.nodeLow[node];
+        }
+        return (node == MISSING) ? null : (node == TRUE);
+    }
+    // Word version: CompiledCPT.TRUE, FALSE, or MISSING
+    public byte preferredValue(int varId, long word)
+    {
+        int node = this.roots[varId];
+        while (node >= NUM_LEAVES)
+        {
+            node = ((word & (1L << this.nodeVar[node])) != 0) ? this.nodeHigh[node] : this.nodeLow[node];
+        }
+        return (node == MISSING) ? CompiledCPT.MISSING : (byte) node;
+    }
+    // Helper function
+    private int varId(String var)
+    {
+        int id = this.index.id(var);
+        if (id < 0)
+        {
+            throw new RuntimeException("unknown preference variable");
+        }
+        return id;
+    }
+
+    // Number of internal nodes across all CP-tables (shared nodes counted once)
+    public int numNodes()
+    {
+        return this.nodeVar.length - NUM_LEAVES;
+    }
+    // Number of internal nodes reachable from the variable's CP-table
+    public int numNodes(String var)
+    {
+        HashSet<Integer> seen = new HashSet<Integer>();
+        ArrayDeque<Integer> frontier = new ArrayDeque<Integer>();
+        frontier.push(this.roots[this.varId(var)]);
+        while (!frontier.isEmpty())
+        {
+            int node = frontier.pop();
+            if (node >= NUM_LEAVES && seen.add(node))
+            {
+                frontier.push(this.nodeLow[node]);
+                frontier.push(this.nodeHigh[node]);
+            }
+        }
+        return seen.size();
+    }
+
+    // Rebuild the variable's CP-table, with statements over the parents the diagram actually tests
+    // (For a table with all statements over the same parent set, this is the same as CPTable.normalized)
+    public CPTable decode(String var)
+    {
+        CPTable table = new CPTable(var);
+        HashSet<String> testedParents = new HashSet<String>();
+        ArrayDeque<Integer> frontier = new ArrayDeque<Integer>();
+        frontier.push(this.roots[this.varId(var)]);
+        while (!frontier.isEmpty())
+        {
+            int node = frontier.pop();
+            if (node >= NUM_LEAVES)
+            {
+                testedParents.add(this.index.name(this.nodeVar[node]));
+                frontier.push(this.nodeLow[node]);
+                frontier.push(this.nodeHigh[node]);
+            }
+        }
+        this.decode(this.roots[this.varId(var)],new Assignment(),testedParents,table);
+        return table;
+    }
+    // Helper function
+    // Add a statement for each full assignment to the tested parents that extends the path to the given node
+    private void decode(int node, Assignment path, HashSet<String> testedParents, CPTable table)
+    {
+        if (node < NUM_LEAVES)
+        {
+            if (node != MISSING)
+            {
+                for (Assignment parentAssignment : path.expandedByVars(testedParents))
+                {
+                    table.put(parentAssignment,node == TRUE);
+                }
+            }
+            return;
+        }
+        String parent = this.index.name(this.nodeVar[node]);
+        this.decode(this.nodeLow[node],path.altered(parent,Boolean.FALSE),testedParents,table);
+        this.decode(this.nodeHigh[node],path.altered(parent,Boolean.TRUE),testedParents,table);
+    }
+}
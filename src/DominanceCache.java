@@ -0,0 +1,189 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Size-bounded cache in front of dominance queries "does the CP-net entail better>worse?" on a PreferenceSpecification
+// Two levels, both evicting the least recently used entry:
+//  - answers, keyed by the pair of packed outcome words
+//  - partially-explored improving-flip searches, keyed by the worse outcome, so a miss whose worse outcome was
+//    already searched from resumes that search instead of starting over
+// Everything is dropped automatically once the CP-net's modification count changes (see PreferenceSpecification)
+// Safe to query from many threads, as long as the CP-net itself is not being changed at the same time
+class DominanceCache
+{
+    // Fields
+
+    private final PreferenceSpecification spec;
+    private final int maxAnswers;
+    private final int maxSearches;
+
+    // Guarded by this: snapshot of the CP-net, the modification count it was made at, and both LRU maps
+    private FrozenPreferenceSpecification model;
+    private long modelVersion;
+    private final LinkedHashMap<OutcomePair,Boolean> answers;
+    private final LinkedHashMap<Long,ImprovingFlipSearch> searches;
+
+    // Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong searchReuses = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // Constructor
+    public DominanceCache(PreferenceSpecification spec, int maxAnswers, int maxSearches)
+    {
+        this.spec = spec;
+        this.maxAnswers = maxAnswers;
+        this.maxSearches = maxSearches;
+        // Access-ordered maps that drop their eldest entry once over capacity
+        this.answers = new LinkedHashMap<OutcomePair,Boolean>(16,0.75f,true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<OutcomePair,Boolean> eldest)
+            {
+                return this.size() > DominanceCache.this.maxAnswers;
+            }
+        };
+        this.searches = new LinkedHashMap<Long,ImprovingFlipSearch>(16,0.75f,true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long,ImprovingFlipSearch> eldest)
+            {
+                return this.size() > DominanceCache.this.maxSearches;
+            }
+        };
+        this.modelVersion = -1;
+    }
+
+    // Methods
+
+    // Return whether the CP-net entails better>worse (both complete outcomes)
+    public boolean dominates(Assignment better, Assignment worse)
+    {
+        VariableIndex index = this.currentModel().getVariableIndex();
+        // Same check as FrozenPreferenceSpecification.dominates: pack would quietly read unassigned variables as false
+        long allMask = (index.size() == 64) ? -1L : (1L << index.size()) - 1;
+        if (index.assignedMask(better) != allMask || index.assignedMask(worse) != allMask)
+        {
+            throw new RuntimeException("dominance queries need complete outcomes");
+        }
+        return this.dominates(index.pack(better),index.pack(worse));
+    }
+    // Word version (words packed with the CP-net's current VariableIndex)
+    public boolean dominates(long better, long worse)
+    {
+        OutcomePair key = new OutcomePair(better,worse);
+        ImprovingFlipSearch search;
+        long version;
+        synchronized (this)
+        {
+            FrozenPreferenceSpecification current = this.currentModel();
+            version = this.modelVersion;
+            Boolean answer = this.answers.get(key);
+            if (answer != null)
+            {
+                this.hits.incrementAndGet();
+                return answer;
+            }
+            search = this.searches.get(worse);
+            if (search == null)
+            {
+                this.misses.incrementAndGet();
+                search = new ImprovingFlipSearch(current,worse);
+                this.searches.put(worse,search);
+            }
+            else
+            {
+                this.searchReuses.incrementAndGet();
+            }
+        }
+
+        // Run the (possibly long) search outside the cache lock
+        boolean answer;
+        synchronized (search)
+        {
+            answer = search.reaches(better);
+        }
+
+        synchronized (this)
+        {
+            // Don't store answers computed against a CP-net that has since changed
+            if (version == this.modelVersion)
+            {
+                this.answers.put(key,answer);
+            }
+        }
+        return answer;
+    }
+
+    // Drop everything cached
+    public synchronized void invalidate()
+    {
+        this.answers.clear();
+        this.searches.clear();
+        this.invalidations.incrementAndGet();
+    }
+
+    // Helper function
+    // Get the snapshot, refreezing (and invalidating) if the CP-net changed since it was made
+    private synchronized FrozenPreferenceSpecification currentModel()
+    {
+        long version = this.spec.getModificationCount();
+        if (this.model == null || version != this.modelVersion)
+        {
+            if (this.model != null)
+            {
+                this.invalidate();
+            }
+            this.model = this.spec.freeze();
+            this.modelVersion = version;
+        }
+        return this.model;
+    }
+
+    // Fraction of queries answered straight from the answer cache
+    public double hitRate()
+    {
+        long total = this.hits.get() + this.searchReuses.get() + this.misses.get();
+        return (total == 0) ? 0.0 : (double) this.hits.get() / total;
+    }
+    // Pretty string "hits=... searchReuses=... misses=... hitRate=... invalidations=..."
+    public String stats()
+    {
+        return "hits=" + this.hits.get()
+                + " searchReuses=" + this.searchReuses.get()
+                + " misses=" + this.misses.get()
+                + " hitRate=" + this.hitRate()
+                + " invalidations=" + this.invalidations.get();
+    }
+
+    // Cache key: a pair of packed outcome words
+    static final class OutcomePair
+    {
+        final long better;
+        final long worse;
+
+        OutcomePair(long better, long worse)
+        {
+            this.better = better;
+            this.worse = worse;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(this.better * 0x9E3779B97F4A7C15L + this.worse);
+        }
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            final OutcomePair other = (OutcomePair) obj;
+            return (this.better == other.better && this.worse == other.worse);
+        }
+    }
+}
@@ -0,0 +1,744 @@
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.*;
+
+// CP-net over finite-domain variables (two or more values each)
+// Values are handled as indices into each variable's domain, and an outcome is an int[] indexed by variable id
+//  holding a value index, or UNASSIGNED for a partial outcome such as a condition
+// Binary CP-nets should keep using PreferenceSpecification, which stays specialized to Booleans
+class FiniteDomainCPNet
+{
+    static final int UNASSIGNED = -1;
+
+    // Fields
+
+    // Variable id -> name
+    private ArrayList<String> varNames;
+    // Variable name -> id
+    private HashMap<String,Integer> varIds;
+    // Variable id -> value names, indexed by value
+    private ArrayList<String[]> domains;
+    // Variable id -> CP-table
+    private ArrayList<FiniteDomainCPT> cpts;
+
+    // Constructors
+
+    // For building from scratch
+    public FiniteDomainCPNet()
+    {
+        this.varNames = new ArrayList<String>();
+        this.varIds = new HashMap<String,Integer>();
+        this.domains = new ArrayList<String[]>();
+        this.cpts = new ArrayList<FiniteDomainCPT>();
+    }
+    // Reads in conditional preferences from an XML file in the same format as PreferenceSpecification(String),
+    //  but allowing any number of DOMAIN-VALUEs
+    // The PREFERENCE-STATEMENTs for a variable and parent assignment are "better:worse" pairs that are chained into a
+    //  total order; values they do not mention go last, in domain order
+    // Pairs that only say one value beats each of the others (as writeXML writes for learned rows) make a partial row
+    //  instead (see FiniteDomainCPT.setPreferred)
+    public static FiniteDomainCPNet fromXML(String xmlFile)
+    {
+        FiniteDomainCPNet net = new FiniteDomainCPNet();
+        try
+        {
+            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+            Document doc = dBuilder.parse(xmlFile);
+            doc.getDocumentElement().normalize();
+
+            // Get preference variables and their domains
+            NodeList varList = doc.getElementsByTagName("PREFERENCE-VARIABLE");
+            for (int i = 0; i < varList.getLength(); i++)
+            {
+                Node varNode = varList.item(i);
+                if (varNode.getParentNode().getNodeName().equals("PREFERENCE-SPECIFICATION")) // Avoid getting the "PREFERENCE-SPECIFICATION" children of "PREFERENCE-STATEMENT"
+                {
+                    Element varElement = (Element) varNode;
+                    String varName = varElement.getElementsByTagName("VARIABLE-NAME").item(0).getTextContent();
+                    NodeList varValList = varElement.getElementsByTagName("DOMAIN-VALUE");
+                    ArrayList<String> domain = new ArrayList<String>();
+                    for (int j = 0; j < varValList.getLength(); j++)
+                    {
+                        domain.add(varValList.item(j).getTextContent());
+                    }
+                    net.addVar(varName,domain);
+                }
+            }
+
+            // Collect the statements for each variable: conditions (parent id -> value) and better/worse pairs
+            ArrayList<ArrayList<HashMap<Integer,Integer>>> varToConditions = new ArrayList<ArrayList<HashMap<Integer,Integer>>>();
+            ArrayList<ArrayList<int[]>> varToPairs = new ArrayList<ArrayList<int[]>>();
+            for (int var = 0; var < net.numVars(); var++)
+            {
+                varToConditions.add(new ArrayList<HashMap<Integer,Integer>>());
+                varToPairs.add(new ArrayList<int[]>());
+            }
+            NodeList stmtList = doc.getElementsByTagName("PREFERENCE-STATEMENT");
+            for (int i = 0; i < stmtList.getLength(); i++)
+            {
+                Element stmtElement = (Element) stmtList.item(i);
+                int var = net.varId(stmtElement.getElementsByTagName("PREFERENCE-VARIABLE").item(0).getTextContent());
+
+                HashMap<Integer,Integer> condition = new HashMap<Integer,Integer>();
+                NodeList stmtCondList = stmtElement.getElementsByTagName("CONDITION");
+                for (int j = 0; j < stmtCondList.getLength(); j++)
+                {
+                    // Extract variable and value from strings of the form "var=val"
+                    String cond = stmtCondList.item(j).getTextContent();
+                    int parent = net.varId(cond.split("=")[0]);
+                    condition.put(parent,net.valueIndex(parent,cond.split("=")[1]));
+                }
+
+                // Get the preference ordering for the relevant variable from strings of the form "better:worse"
+                String pref = stmtElement.getElementsByTagName("PREFERENCE").item(0).getTextContent();
+                int better = net.valueIndex(var,pref.split(":")[0]);
+                int worse = net.valueIndex(var,pref.split(":")[1]);
+                varToConditions.get(var).add(condition);
+                varToPairs.get(var).add(new int[]{better,worse});
+            }
+
+            // Build each table over the union of the variables its statements are conditioned on
+            for (int var = 0; var < net.numVars(); var++)
+            {
+                TreeSet<Integer> parents = new TreeSet<Integer>();
+                for (HashMap<Integer,Integer> condition : varToConditions.get(var))
+                {
+                    parents.addAll(condition.keySet());
+                }
+                FiniteDomainCPT table = net.newCPT(var,parents);
+                for (int row = 0; row < table.numRows(); row++)
+                {
+                    int[] parentValues = table.parentValuesOf(row);
+                    ArrayList<int[]> rowPairs = new ArrayList<int[]>();
+                    for (int s = 0; s < varToConditions.get(var).size(); s++)
+                    {
+                        if (table.matches(parentValues,varToConditions.get(var).get(s)))
+                        {
+                            rowPairs.add(varToPairs.get(var).get(s));
+                        }
+                    }
+                    int best = FiniteDomainCPNet.bestOverAll(net.domainSize(var),rowPairs);
+                    if (best != UNASSIGNED)
+                    {
+                        table.setPreferred(row,best);
+                    }
+                    else if (!rowPairs.isEmpty())
+                    {
+                        table.setOrder(row,FiniteDomainCPNet.chainPairs(net.domainSize(var),rowPairs));
+                    }
+                }
+                net.setCPT(table);
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return net;
+    }
+    // Helper function
+    // The value that the given better/worse pairs say beats every other value, if that is all they say
+    //  (UNASSIGNED otherwise)
+    private static int bestOverAll(int domainSize, List<int[]> pairs)
+    {
+        if (pairs.isEmpty())
+        {
+            return UNASSIGNED;
+        }
+        int best = pairs.get(0)[0];
+        boolean[] beaten = new boolean[domainSize];
+        for (int[] pair : pairs)
+        {
+            if (pair[0] != best || pair[1] == best)
+            {
+                return UNASSIGNED;
+            }
+            beaten[pair[1]] = true;
+        }
+        for (int value = 0; value < domainSize; value++)
+        {
+            if (value != best && !beaten[value])
+            {
+                return UNASSIGNED;
+            }
+        }
+        return best;
+    }
+    // Helper function
+    // Total order consistent with the given better/worse pairs (ties broken by domain order)
+    private static int[] chainPairs(int domainSize, List<int[]> pairs)
+    {
+        int[] numBetter = new int[domainSize];
+        for (int[] pair : pairs)
+        {
+            numBetter[pair[1]]++;
+        }
+        int[] order = new int[domainSize];
+        boolean[] placed = new boolean[domainSize];
+        for (int position = 0; position < domainSize; position++)
+        {
+            int next = -1;
+            for (int value = 0; value < domainSize && next < 0; value++)
+            {
+                if (!placed[value] && numBetter[value] == 0)
+                {
+                    next = value;
+                }
+            }
+            if (next < 0)
+            {
+                throw new RuntimeException("PREFERENCE-STATEMENTs for one condition form a cycle");
+            }
+            placed[next] = true;
+            order[position] = next;
+            for (int[] pair : pairs)
+            {
+                if (pair[0] == next)
+                {
+                    numBetter[pair[1]]--;
+                }
+            }
+        }
+        return order;
+    }
+
+    // Methods
+
+    // Declare a variable with the given domain, returning its id
+    public int addVar(String varName, List<String> domainValues)
+    {
+        if (this.varIds.containsKey(varName))
+        {
+            throw new RuntimeException("tried to add a variable to the CP-net that already existed");
+        }
+        if (domainValues.size() < 2)
+        {
+            throw new RuntimeException("PREFERENCE-VARIABLE should have at least two DOMAIN-VALUEs");
+        }
+        int id = this.varNames.size();
+        this.varNames.add(varName);
+        this.varIds.put(varName,id);
+        this.domains.add(domainValues.toArray(new String[0]));
+        this.cpts.add(this.newCPT(id,Collections.<Integer>emptySet()));
+        return id;
+    }
+
+    public int numVars()
+    {
+        return this.varNames.size();
+    }
+    public String varName(int var)
+    {
+        return this.varNames.get(var);
+    }
+    public int varId(String varName)
+    {
+        Integer id = this.varIds.get(varName);
+        if (id == null)
+        {
+            throw new RuntimeException("unknown preference variable: ".concat(varName));
+        }
+        return id;
+    }
+    public int domainSize(int var)
+    {
+        return this.domains.get(var).length;
+    }
+    public String valueName(int var, int value)
+    {
+        return this.domains.get(var)[value];
+    }
+    public int valueIndex(int var, String valueName)
+    {
+        String[] domain = this.domains.get(var);
+        for (int value = 0; value < domain.length; value++)
+        {
+            if (domain[value].equals(valueName))
+            {
+                return value;
+            }
+        }
+        throw new RuntimeException("unknown DOMAIN-VALUE: ".concat(valueName));
+    }
+
+    // Get a variable's CP-table (the object itself)
+    public FiniteDomainCPT getCPT(int var)
+    {
+        return this.cpts.get(var);
+    }
+    // Replace a variable's CP-table
+    // The table must be over a known variable and its domain, with known parents (not the variable itself) in id order
+    //  and their domains, as newCPT makes them
+    public void setCPT(FiniteDomainCPT table)
+    {
+        if (table.var < 0 || table.var >= this.numVars())
+        {
+            throw new RuntimeException("tried to add a CPT for an undeclared preference variable");
+        }
+        if (table.domainSize != this.domainSize(table.var))
+        {
+            throw new RuntimeException("CP-table domain size does not match its variable");
+        }
+        if (table.parentIds.length != table.parentDomainSizes.length)
+        {
+            throw new RuntimeException("CP-table parent domain sizes do not match its parents");
+        }
+        for (int j = 0; j < table.parentIds.length; j++)
+        {
+            int parent = table.parentIds[j];
+            if (parent < 0 || parent >= this.numVars() || parent == table.var)
+            {
+                throw new RuntimeException("CP-table refers to an unknown preference variable");
+            }
+            if (j > 0 && parent <= table.parentIds[j - 1])
+            {
+                throw new RuntimeException("CP-table parents must be in id order");
+            }
+            if (table.parentDomainSizes[j] != this.domainSize(parent))
+            {
+                throw new RuntimeException("CP-table parent domain sizes do not match its parents");
+            }
+        }
+        this.cpts.set(table.var,table);
+    }
+    // Make an empty CP-table for the variable over the given parents
+    public FiniteDomainCPT newCPT(int var, Collection<Integer> parentIds)
+    {
+        TreeSet<Integer> sortedParents = new TreeSet<Integer>(parentIds);
+        int[] parents = new int[sortedParents.size()];
+        int[] parentDomainSizes = new int[sortedParents.size()];
+        int j = 0;
+        for (Integer parent : sortedParents)
+        {
+            parents[j] = parent;
+            parentDomainSizes[j] = this.domainSize(parent);
+            j++;
+        }
+        return new FiniteDomainCPT(var,this.domainSize(var),parents,parentDomainSizes);
+    }
+    // A copy with the same variables and empty CP-tables
+    public FiniteDomainCPNet withoutPreferences()
+    {
+        FiniteDomainCPNet copy = new FiniteDomainCPNet();
+        for (int var = 0; var < this.numVars(); var++)
+        {
+            copy.addVar(this.varName(var),Arrays.asList(this.domains.get(var)));
+        }
+        return copy;
+    }
+
+    // Return the preferred value of the variable given an outcome that assigns its parents (UNASSIGNED if missing)
+    public int preferredValueGiven(int var, int[] outcome)
+    {
+        return this.cpts.get(var).preferredValue(outcome);
+    }
+
+    // Return the most-preferred outcome that agrees with the given condition (UNASSIGNED entries get filled in)
+    // Assumes a complete acyclic CP-net
+    public int[] optimumGiven(int[] condition)
+    {
+        int[] order = this.topologicalOrder();
+        if (order == null)
+        {
+            throw new RuntimeException("input CP-net must be acyclic");
+        }
+        int[] optimum = Arrays.copyOf(condition,condition.length);
+        for (int var : order)
+        {
+            if (optimum[var] == UNASSIGNED)
+            {
+                int preferredValue = this.preferredValueGiven(var,optimum);
+                if (preferredValue == UNASSIGNED)
+                {
+                    throw new RuntimeException("missing preference data; complete CP-net input expected");
+                }
+                optimum[var] = preferredValue;
+            }
+        }
+        return optimum;
+    }
+    // Variable ids ordered so that parents come before children, or null if the parent relation is cyclic
+    public int[] topologicalOrder()
+    {
+        int[][] parentIds = new int[this.numVars()][];
+        for (int var = 0; var < this.numVars(); var++)
+        {
+            parentIds[var] = this.cpts.get(var).parentIds;
+        }
+        int[] order = VariableIndex.topologicalOrder(parentIds);
+        return (order.length == this.numVars()) ? order : null;
+    }
+
+    // Pretty string of an outcome "(var1=val1,var2=val2,...)", skipping unassigned variables
+    public String outcomeToString(int[] outcome)
+    {
+        StringJoiner joiner = new StringJoiner(",","(",")");
+        for (int var = 0; var < outcome.length; var++)
+        {
+            if (outcome[var] != UNASSIGNED)
+            {
+                joiner.add(this.varName(var).concat("=").concat(this.valueName(var,outcome[var])));
+            }
+        }
+        return joiner.toString();
+    }
+
+    // Write an XML file of the preferences, readable by fromXML
+    // Each row's order is written as a chain of "better:worse" statements between consecutive values, except that a
+    //  partial row is written as its best value beating each of the others
+    void writeXML(String filePath)
+    {
+        try {
+
+            // Build XML tree
+            DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
+            DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
+            Document doc = docBuilder.newDocument();
+            Element rootElement = doc.createElement("PREFERENCE-SPECIFICATION");
+            doc.appendChild(rootElement);
+
+            // Add preference variables
+            for (int var = 0; var < this.numVars(); var++)
+            {
+                Element varElement = doc.createElement("PREFERENCE-VARIABLE");
+                rootElement.appendChild(varElement);
+
+                Element varNameElement = doc.createElement("VARIABLE-NAME");
+                varNameElement.appendChild(doc.createTextNode(this.varName(var)));
+                varElement.appendChild(varNameElement);
+
+                for (String valueName : this.domains.get(var))
+                {
+                    Element valNameElement = doc.createElement("DOMAIN-VALUE");
+                    valNameElement.appendChild(doc.createTextNode(valueName));
+                    varElement.appendChild(valNameElement);
+                }
+            }
+
+            // Add CP-statements
+            Integer stmtID = 0;
+            for (FiniteDomainCPT table : this.cpts)
+            {
+                for (int row = 0; row < table.numRows(); row++)
+                {
+                    int[] order = table.orderAt(row);
+                    if (order == null)
+                    {
+                        continue;
+                    }
+                    int[] parentValues = table.parentValuesOf(row);
+                    // Better/worse value pairs for the row
+                    ArrayList<int[]> pairs = new ArrayList<int[]>();
+                    for (int position = 0; position + 1 < order.length; position++)
+                    {
+                        pairs.add(new int[]{order[position],order[position + 1]});
+                    }
+                    if (order.length == 1)
+                    {
+                        for (int value = 0; value < table.domainSize; value++)
+                        {
+                            if (value != order[0])
+                            {
+                                pairs.add(new int[]{order[0],value});
+                            }
+                        }
+                    }
+                    for (int[] pair : pairs)
+                    {
+                        Element stmtElement = doc.createElement("PREFERENCE-STATEMENT");
+                        rootElement.appendChild(stmtElement);
+
+                        Element stmtIDElement = doc.createElement("STATEMENT-ID"); // assign an ID arbitrarily
+                        stmtIDElement.appendChild(doc.createTextNode(stmtID.toString()));
+                        stmtElement.appendChild(stmtIDElement);
+                        stmtID++;
+
+                        Element stmtVarElement = doc.createElement("PREFERENCE-VARIABLE");
+                        stmtVarElement.appendChild(doc.createTextNode(this.varName(table.var)));
+                        stmtElement.appendChild(stmtVarElement);
+
+                        for (int j = 0; j < table.parentIds.length; j++)
+                        {
+                            int parent = table.parentIds[j];
+                            Element stmtCondElement = doc.createElement("CONDITION");
+                            stmtCondElement.appendChild(doc.createTextNode(this.varName(parent).concat("=").concat(this.valueName(parent,parentValues[j]))));
+                            stmtElement.appendChild(stmtCondElement);
+                        }
+
+                        Element stmtPrefElement = doc.createElement("PREFERENCE");
+                        String nameOfBetterVal = this.valueName(table.var,pair[0]);
+                        String nameOfWorseVal = this.valueName(table.var,pair[1]);
+                        stmtPrefElement.appendChild(doc.createTextNode(nameOfBetterVal.concat(":").concat(nameOfWorseVal)));
+                        stmtElement.appendChild(stmtPrefElement);
+                    }
+                }
+            }
+
+            // Write XML
+            TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            Transformer transformer = transformerFactory.newTransformer();
+            DOMSource source = new DOMSource(doc);
+            StreamResult result = new StreamResult(new File(filePath));
+            transformer.transform(source, result);
+
+        } catch (ParserConfigurationException pce) {
+            pce.printStackTrace();
+        } catch (TransformerException tfe) {
+            tfe.printStackTrace();
+        }
+    }
+}
+
+// CP-table for a finite-domain variable, stored densely
+// A parent assignment maps to a mixed-radix row number (the first parent, by id, is the lowest digit), and each row
+//  holds a full preference order over the variable's values, best first, in one flat int array
+// A row can instead be partial, saying only that one value beats every other value (the rest of the row is UNASSIGNED)
+class FiniteDomainCPT
+{
+    // The variable over which preferences are specified
+    final int var;
+    final int domainSize;
+    // Parent ids, ascending, and their domain sizes
+    final int[] parentIds;
+    final int[] parentDomainSizes;
+    // Row r's order is orders[r*domainSize ... (r+1)*domainSize-1]; a row is missing if its first entry is UNASSIGNED,
+    //  and partial if only its first entry is set
+    final int[] orders;
+
+    // Constructor (all rows missing)
+    public FiniteDomainCPT(int var, int domainSize, int[] parentIds, int[] parentDomainSizes)
+    {
+        this.var = var;
+        this.domainSize = domainSize;
+        this.parentIds = parentIds;
+        this.parentDomainSizes = parentDomainSizes;
+        long numRows = 1;
+        for (int size : parentDomainSizes)
+        {
+            numRows *= size;
+            if (numRows * domainSize > (1 << 30))
+            {
+                throw new RuntimeException("CP-table too large to store densely");
+            }
+        }
+        this.orders = new int[(int) numRows * domainSize];
+        Arrays.fill(this.orders,FiniteDomainCPNet.UNASSIGNED);
+    }
+
+    public int numRows()
+    {
+        return this.orders.length / this.domainSize;
+    }
+
+    // Row selected by an outcome (which must assign every parent a value in its domain)
+    public int rowOf(int[] outcome)
+    {
+        int row = 0;
+        for (int j = this.parentIds.length - 1; j >= 0; j--)
+        {
+            int parentValue = outcome[this.parentIds[j]];
+            if (parentValue < 0 || parentValue >= this.parentDomainSizes[j])
+            {
+                throw new RuntimeException("invalid CP-table lookup");
+            }
+            row = row * this.parentDomainSizes[j] + parentValue;
+        }
+        return row;
+    }
+    // Parent values (in parentIds order) of a row
+    public int[] parentValuesOf(int row)
+    {
+        int[] parentValues = new int[this.parentIds.length];
+        for (int j = 0; j < this.parentIds.length; j++)
+        {
+            parentValues[j] = row % this.parentDomainSizes[j];
+            row /= this.parentDomainSizes[j];
+        }
+        return parentValues;
+    }
+    // Whether a row's parent values agree with a (partial) condition: parent id -> value
+    public boolean matches(int[] parentValues, Map<Integer,Integer> condition)
+    {
+        for (int j = 0; j < this.parentIds.length; j++)
+        {
+            Integer value = condition.get(this.parentIds[j]);
+            if (value != null && value != parentValues[j])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Set a row's preference order (a permutation of the values, best first)
+    public void setOrder(int row, int[] order)
+    {
+        if (order.length != this.domainSize)
+        {
+            throw new RuntimeException("preference order must rank every value");
+        }
+        boolean[] seen = new boolean[this.domainSize];
+        for (int value : order)
+        {
+            if (value < 0 || value >= this.domainSize || seen[value])
+            {
+                throw new RuntimeException("preference order must be a permutation of the values");
+            }
+            seen[value] = true;
+        }
+        System.arraycopy(order,0,this.orders,row * this.domainSize,this.domainSize);
+    }
+    // Make a row partial: the given value beats every other value, and nothing is said about the others
+    // (With only two values that is a full order, which is how it is stored)
+    public void setPreferred(int row, int value)
+    {
+        if (value < 0 || value >= this.domainSize)
+        {
+            throw new RuntimeException("preferred value is not in the domain");
+        }
+        Arrays.fill(this.orders,row * this.domainSize,(row + 1) * this.domainSize,FiniteDomainCPNet.UNASSIGNED);
+        this.orders[row * this.domainSize] = value;
+        if (this.domainSize == 2)
+        {
+            this.orders[row * this.domainSize + 1] = 1 - value;
+        }
+    }
+    // A row's preference order (copy), or null if missing
+    // For a partial row, just its best value
+    public int[] orderAt(int row)
+    {
+        if (this.orders[row * this.domainSize] == FiniteDomainCPNet.UNASSIGNED)
+        {
+            return null;
+        }
+        if (this.orders[row * this.domainSize + 1] == FiniteDomainCPNet.UNASSIGNED)
+        {
+            return new int[]{this.orders[row * this.domainSize]};
+        }
+        return Arrays.copyOfRange(this.orders,row * this.domainSize,(row + 1) * this.domainSize);
+    }
+
+    // Most-preferred value given an outcome that assigns the parents (UNASSIGNED if the row is missing)
+    public int preferredValue(int[] outcome)
+    {
+        return this.orders[this.rowOf(outcome) * this.domainSize];
+    }
+}
+
+// Optimal example over a FiniteDomainCPNet (see OptimalExample)
+class FiniteDomainExample
+{
+    // The restrictions, with UNASSIGNED for free variables
+    int[] condition;
+    // The most-preferred outcome given the condition
+    int[] optimum;
+
+    // Constructor
+    public FiniteDomainExample(int[] condition, int[] optimum)
+    {
+        // The optimal outcome must contain the assigned values of the condition
+        for (int var = 0; var < condition.length; var++)
+        {
+            if (condition[var] != FiniteDomainCPNet.UNASSIGNED && condition[var] != optimum[var])
+            {
+                throw new RuntimeException("tried to construct an invalid FiniteDomainExample");
+            }
+        }
+        this.condition = condition;
+        this.optimum = optimum;
+    }
+
+    // Random generation: each variable appears in the condition with the given probability, with a uniform value
+    // Assumes that the input is a complete acyclic CP-net
+    static FiniteDomainExample biasedRandomExample(FiniteDomainCPNet acyclicCPnet, float prob, Random rng)
+    {
+        int[] condition = new int[acyclicCPnet.numVars()];
+        for (int var = 0; var < condition.length; var++)
+        {
+            condition[var] = (rng.nextFloat() < prob) ? rng.nextInt(acyclicCPnet.domainSize(var)) : FiniteDomainCPNet.UNASSIGNED;
+        }
+        return new FiniteDomainExample(condition,acyclicCPnet.optimumGiven(condition));
+    }
+}
+
+// Learning finite-domain CP-nets from optimal examples, generalizing CPNetLearningFromOptimalExamples
+// The search is CPNetLearningFromOptimalExamples.learnWithin's, over variable names; only the CP-tables differ
+// Examples only show each row's most-preferred value, so the learned rows are partial (see FiniteDomainCPT.setPreferred)
+class FiniteDomainLearner
+{
+    // Learn CP-tables for the variables declared in the given net; returns a new net, or null if none is consistent
+    public static FiniteDomainCPNet learn(FiniteDomainCPNet declared, Collection<FiniteDomainExample> examples, int inDegreeBound)
+    {
+        FiniteDomainCPNet learned = declared.withoutPreferences();
+        LearningResult result = FiniteDomainLearner.learnWithin(learned, examples, inDegreeBound, LearningOrders.arbitrary(), null, -1);
+        return result.isComplete() ? learned : null;
+    }
+    // Version with a learning order and limits, as in CPNetLearningFromOptimalExamples.learnAnytime
+    // Fills in the CP-tables of learned (which should start out empty, like withoutPreferences() makes them) as variables
+    //  are added, and returns how the run went (with a null learned field)
+    public static LearningResult learnWithin(FiniteDomainCPNet learned, Collection<FiniteDomainExample> examples, int inDegreeBound, LearningOrder order, Duration timeout, long evaluationBudget)
+    {
+        long startNanos = System.nanoTime();
+        LinkedHashSet<String> allVars = new LinkedHashSet<String>();
+        for (int var = 0; var < learned.numVars(); var++)
+        {
+            allVars.add(learned.varName(var));
+        }
+        CandidateEvaluator<FiniteDomainCPT> evaluator = (var, candidateParents) ->
+        {
+            ArrayList<Integer> parentIds = new ArrayList<Integer>();
+            for (String parent : candidateParents)
+            {
+                parentIds.add(learned.varId(parent));
+            }
+            return FiniteDomainLearner.createCPTFromOptima(learned, learned.varId(var), parentIds, examples);
+        };
+        return CPNetLearningFromOptimalExamples.learnWithin(allVars, inDegreeBound, evaluator, (var, table) -> learned.setCPT(table), order, startNanos, timeout, evaluationBudget);
+    }
+    // Helper function
+    // Every relevant example (not conditioned on var) with the same parent values must have the same value for var
+    private static FiniteDomainCPT createCPTFromOptima(FiniteDomainCPNet net, int var, Collection<Integer> candidateParents, Collection<FiniteDomainExample> examples)
+    {
+        FiniteDomainCPT created = net.newCPT(var,candidateParents);
+        int[] chosen = new int[created.numRows()];
+        Arrays.fill(chosen,FiniteDomainCPNet.UNASSIGNED);
+        for (FiniteDomainExample example : examples)
+        {
+            if (example.condition[var] != FiniteDomainCPNet.UNASSIGNED)
+            {
+                continue;
+            }
+            int row = created.rowOf(example.optimum);
+            if (chosen[row] == FiniteDomainCPNet.UNASSIGNED)
+            {
+                chosen[row] = example.optimum[var];
+            }
+            else if (chosen[row] != example.optimum[var])
+            {
+                return null;
+            }
+        }
+        for (int row = 0; row < chosen.length; row++)
+        {
+            if (chosen[row] != FiniteDomainCPNet.UNASSIGNED)
+            {
+                created.setPreferred(row,chosen[row]);
+            }
+        }
+        return created;
+    }
+}
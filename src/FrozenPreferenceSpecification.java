@@ -0,0 +1,410 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Immutable, compiled snapshot of a CP-net, made by PreferenceSpecification.freeze()
+// Every field is final and nothing is modified after construction, so any number of threads can query one snapshot
+//  concurrently without locking; later changes to the source PreferenceSpecification do not show up here
+// Outcomes are handled as outcome words (see VariableIndex), so at most 64 variables are supported
+final class FrozenPreferenceSpecification
+{
+    // Fields
+
+    // Interned variable ids
+    private final VariableIndex index;
+    // Variable id -> compiled CP-table
+    private final CompiledCPT[] cpts;
+    // Variable ids ordered so that parents come before children, or null if the parent relation is cyclic
+    private final int[] topologicalOrder;
+    // Bits of all variables
+    private final long allMask;
+
+    // Constructor
+    FrozenPreferenceSpecification(PreferenceSpecification original)
+    {
+        this.index = new VariableIndex(original.getVars());
+        if (!this.index.canPack())
+        {
+            throw new RuntimeException("cannot freeze a CP-net with more than 64 preference variables");
+        }
+        int numVars = this.index.size();
+        this.cpts = new CompiledCPT[numVars];
+        for (int i = 0; i < numVars; i++)
+        {
+            this.cpts[i] = new CompiledCPT(original.getCPT(this.index.name(i)),this.index);
+        }
+        int[][] parentIds = new int[numVars][];
+        for (int i = 0; i < numVars; i++)
+        {
+            parentIds[i] = this.cpts[i].parentIds;
+        }
+        int[] order = VariableIndex.topologicalOrder(parentIds);
+        this.topologicalOrder = (order.length == numVars) ? order : null;
+        this.allMask = (numVars == 64) ? -1L : (1L << numVars) - 1;
+    }
+    // Methods
+
+    // Get the variables in the CP-net
+    public Set<String> getVars()
+    {
+        HashSet<String> vars = new HashSet<String>();
+        for (int i = 0; i < this.index.size(); i++)
+        {
+            vars.add(this.index.name(i));
+        }
+        return Collections.unmodifiableSet(vars);
+    }
+    // Get the variable ids used for outcome words
+    public VariableIndex getVariableIndex()
+    {
+        return this.index;
+    }
+    // Whether the parent relation is acyclic
+    public boolean isAcyclic()
+    {
+        return this.topologicalOrder != null;
+    }
+
+    // Return the preferred value of the variable given the condition (null if the CP-table has no such entry)
+    // Like CPTable.preferredValueGiven, the condition must assign all of the variable's parents
+    public Boolean preferredValueGiven(String var, Assignment condition)
+    {
+        int id = this.varId(var);
+        long assigned = this.index.assignedMask(condition);
+        for (int parent : this.cpts[id].parentIds)
+        {
+            if ((assigned & (1L << parent)) == 0)
+            {
+                throw new RuntimeException("invalid CP-table lookup");
+            }
+        }
+        byte preferredValue = this.preferredValue(id,this.index.pack(condition));
+        return (preferredValue == CompiledCPT.MISSING) ? null : (preferredValue == CompiledCPT.TRUE);
+    }
+    // Word version: CompiledCPT.TRUE, FALSE, or MISSING
+    public byte preferredValue(int varId, long word)
+    {
+        return this.cpts[varId].preferredValue(word);
+    }
+    // Helper function
+    private int varId(String var)
+    {
+        int id = this.index.id(var);
+        if (id < 0)
+        {
+            throw new RuntimeException("unknown preference variable");
+        }
+        return id;
+    }
+
+    // Return the most-preferred outcome that agrees with the given (partial) condition
+    // Assumes a complete acyclic CP-net
+    public Assignment optimumGiven(Assignment condition)
+    {
+        long optimum = this.optimumGiven(this.index.assignedMask(condition),this.index.pack(condition));
+        return this.index.unpack(optimum);
+    }
+    // Word version: variables in assignedMask keep their bits from values, the rest are swept in topological order
+    public long optimumGiven(long assignedMask, long values)
+    {
+        if (this.topologicalOrder == null)
+        {
+            throw new RuntimeException("input CP-net must be acyclic");
+        }
+        long optimum = values & assignedMask;
+        for (int var : this.topologicalOrder)
+        {
+            if ((assignedMask & (1L << var)) != 0)
+            {
+                continue;
+            }
+            byte preferredValue = this.cpts[var].preferredValue(optimum);
+            if (preferredValue == CompiledCPT.MISSING)
+            {
+                throw new RuntimeException("missing preference data; complete CP-net input expected");
+            }
+            if (preferredValue == CompiledCPT.TRUE)
+            {
+                optimum |= (1L << var);
+            }
+        }
+        return optimum;
+    }
+
+    // Batch version over a column-oriented batch of conditions: row i is (assignedMasks[i], values[i])
+    // Returns the optimal completion of each row as an outcome word
+    public long[] optimaGiven(long[] assignedMasks, long[] values)
+    {
+        OptimumBatchEvent event = new OptimumBatchEvent();
+        event.begin();
+        long[] optima = this.newBatchResult(assignedMasks,values);
+        this.sweepBatch(assignedMasks,values,optima,0,optima.length);
+        this.commitBatch(event,optima.length,optima.length,false);
+        return optima;
+    }
+    // Same, but splitting the batch into chunks that are swept in parallel on the common fork-join pool
+    public long[] optimaGivenParallel(long[] assignedMasks, long[] values, int chunkSize)
+    {
+        if (chunkSize <= 0)
+        {
+            throw new RuntimeException("chunk size must be positive");
+        }
+        OptimumBatchEvent event = new OptimumBatchEvent();
+        event.begin();
+        long[] optima = this.newBatchResult(assignedMasks,values);
+        // Bounds are computed as longs, since chunk * chunkSize can pass Integer.MAX_VALUE for large chunk sizes
+        int numChunks = (int) ((optima.length + (long) chunkSize - 1) / chunkSize);
+        IntStream.range(0,numChunks).parallel().forEach(chunk ->
+                this.sweepBatch(assignedMasks,values,optima,(int) ((long) chunk * chunkSize),
+                        (int) Math.min(optima.length,(long) (chunk + 1) * chunkSize)));
+        this.commitBatch(event,optima.length,chunkSize,true);
+        return optima;
+    }
+    // Helper function
+    private void commitBatch(OptimumBatchEvent event, int batchSize, int chunkSize, boolean parallel)
+    {
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.variableCount = this.cpts.length;
+            event.batchSize = batchSize;
+            event.chunkSize = chunkSize;
+            event.parallel = parallel;
+            event.commit();
+        }
+    }
+    // Helper function
+    private long[] newBatchResult(long[] assignedMasks, long[] values)
+    {
+        if (this.topologicalOrder == null)
+        {
+            throw new RuntimeException("input CP-net must be acyclic");
+        }
+        if (assignedMasks.length != values.length)
+        {
+            throw new RuntimeException("condition batch columns must have the same length");
+        }
+        return new long[assignedMasks.length];
+    }
+    // Helper function
+    // Sweep rows [from,to) one variable at a time, so the inner loop is a tight pass over the batch columns
+    private void sweepBatch(long[] assignedMasks, long[] values, long[] optima, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            optima[i] = values[i] & assignedMasks[i];
+        }
+        for (int var : this.topologicalOrder)
+        {
+            long bit = 1L << var;
+            int[] parentIds = this.cpts[var].parentIds;
+            byte[] rows = this.cpts[var].rows;
+            for (int i = from; i < to; i++)
+            {
+                if ((assignedMasks[i] & bit) != 0)
+                {
+                    continue;
+                }
+                int row = 0;
+                for (int j = 0; j < parentIds.length; j++)
+                {
+                    row |= (int) ((optima[i] >>> parentIds[j]) & 1L) << j;
+                }
+                byte preferredValue = rows[row];
+                if (preferredValue == CompiledCPT.MISSING)
+                {
+                    throw new RuntimeException("missing preference data; complete CP-net input expected");
+                }
+                optima[i] |= ((long) preferredValue) << var;
+            }
+        }
+    }
+
+    // Return whether flipping the given variable in the outcome is an improvement according to its CP-table
+    public boolean isImprovingFlip(long word, int varId)
+    {
+        long flipped = word ^ (1L << varId);
+        byte preferredValue = this.cpts[varId].preferredValue(flipped);
+        return preferredValue != CompiledCPT.MISSING && (preferredValue == CompiledCPT.TRUE) == ((flipped & (1L << varId)) != 0);
+    }
+
+    // Return whether the CP-net entails better>worse, i.e., better can be reached from worse by improving flips
+    // Both arguments must be complete outcomes
+    // Warning: Exponential-time in the worst case
+    public boolean dominates(Assignment better, Assignment worse)
+    {
+        if (this.index.assignedMask(better) != this.allMask || this.index.assignedMask(worse) != this.allMask)
+        {
+            throw new RuntimeException("dominance queries need complete outcomes");
+        }
+        return this.dominates(this.index.pack(better),this.index.pack(worse));
+    }
+    // Word version
+    public boolean dominates(long better, long worse)
+    {
+        return new ImprovingFlipSearch(this,worse).reaches(better);
+    }
+}
+
+// Depth-first search over improving flips from a fixed starting outcome
+// Keeps its visited set and frontier between calls, so asking about another target from the same start resumes
+//  the search where it stopped instead of starting over
+// Not thread-safe; callers sharing one search must synchronize on it
+class ImprovingFlipSearch
+{
+    private final FrozenPreferenceSpecification model;
+    private final long start;
+    // Outcomes seen so far (including the start itself)
+    private final LongHashSet seen;
+    // Whether the start is reachable from itself, i.e., lies on a cycle
+    private boolean startReached;
+    private long[] frontier;
+    private int frontierSize;
+
+    // Constructor
+    public ImprovingFlipSearch(FrozenPreferenceSpecification model, long start)
+    {
+        this.model = model;
+        this.start = start;
+        this.seen = new LongHashSet();
+        this.seen.add(start);
+        this.startReached = false;
+        this.frontier = new long[16];
+        this.frontier[0] = start;
+        this.frontierSize = 1;
+    }
+
+    // Return whether the target can be reached from the start by one or more improving flips
+    public boolean reaches(long target)
+    {
+        while (!this.alreadyReached(target) && this.frontierSize > 0)
+        {
+            long current = this.frontier[--this.frontierSize];
+            for (int var = 0; var < this.model.getVariableIndex().size(); var++)
+            {
+                if (!this.model.isImprovingFlip(current,var))
+                {
+                    continue;
+                }
+                long flipped = current ^ (1L << var);
+                if (flipped == this.start)
+                {
+                    this.startReached = true;
+                }
+                if (this.seen.add(flipped))
+                {
+                    if (this.frontierSize == this.frontier.length)
+                    {
+                        this.frontier = Arrays.copyOf(this.frontier,2 * this.frontierSize);
+                    }
+                    this.frontier[this.frontierSize++] = flipped;
+                }
+            }
+        }
+        return this.alreadyReached(target);
+    }
+    // Helper function
+    private boolean alreadyReached(long target)
+    {
+        return (target == this.start) ? this.startReached : this.seen.contains(target);
+    }
+
+    // Number of outcomes seen so far
+    public int numSeen()
+    {
+        return this.seen.size();
+    }
+}
+
+// Open-addressing hash set of longs (no boxing), for visited sets over outcome words
+class LongHashSet
+{
+    private long[] keys;
+    private boolean[] used;
+    private int size;
+
+    // Constructor
+    public LongHashSet()
+    {
+        this.keys = new long[16];
+        this.used = new boolean[16];
+        this.size = 0;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public boolean contains(long key)
+    {
+        int mask = this.keys.length - 1;
+        for (int slot = LongHashSet.hash(key) & mask; this.used[slot]; slot = (slot + 1) & mask)
+        {
+            if (this.keys[slot] == key)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Return true iff the key was not already present
+    public boolean add(long key)
+    {
+        int mask = this.keys.length - 1;
+        int slot = LongHashSet.hash(key) & mask;
+        while (this.used[slot])
+        {
+            if (this.keys[slot] == key)
+            {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = key;
+        this.used[slot] = true;
+        this.size++;
+        // Keep the load factor at most 1/2
+        if (2 * this.size > this.keys.length)
+        {
+            this.grow();
+        }
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.used,false);
+        this.size = 0;
+    }
+
+    // Helper function
+    private void grow()
+    {
+        long[] oldKeys = this.keys;
+        boolean[] oldUsed = this.used;
+        this.keys = new long[2 * oldKeys.length];
+        this.used = new boolean[2 * oldKeys.length];
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldUsed[i])
+            {
+                int slot = LongHashSet.hash(oldKeys[i]) & mask;
+                while (this.used[slot])
+                {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.used[slot] = true;
+            }
+        }
+    }
+    // Helper function
+    // Mix the bits so that nearby outcome words land in different slots
+    private static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
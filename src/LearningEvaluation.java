@@ -0,0 +1,206 @@
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// How well a learned CP-net reproduces a corpus of optimal examples (held out, or sampled from a reference CP-net)
+// An outcome is the optimum given a condition iff every unconditioned variable takes its preferred value given the
+//  outcome's values for its parents, so each example is checked variable by variable without sweeping the learned
+//  net: this works for incomplete learned nets (a missing entry counts as an error) and gives per-variable errors
+// Examples are checked in parallel; nets are handled as FrozenPreferenceSpecifications, so at most 64 variables
+// Usage: LearningEvaluation [nets] [variables] [inDegreeBound] [exampleCounts] [heldOut] [seed] [perVariable]
+//  prints a sample-complexity curve as CSV, e.g. "LearningEvaluation 100 10 2 10,20,50,100,200 1000 0"
+class LearningEvaluation
+{
+    // Examples per parallel work unit, for both sampling and checking
+    private static final int CHUNK_SIZE = 1024;
+
+    private final VariableIndex index;
+    private int numExamples = 0;
+    private int numReproduced = 0;
+    // Variable id -> examples not conditioned on the variable / of those, examples where the learned net disagrees
+    private final int[] numChecked;
+    private final int[] numErrors;
+
+    // Constructor
+    private LearningEvaluation(VariableIndex index)
+    {
+        this.index = index;
+        this.numChecked = new int[index.size()];
+        this.numErrors = new int[index.size()];
+    }
+    // Helper function
+    // Fold another chunk's counts into this one (this must be a fresh, unshared object, e.g. a collect container)
+    private void mergeInto(LearningEvaluation other)
+    {
+        this.numExamples += other.numExamples;
+        this.numReproduced += other.numReproduced;
+        for (int var = 0; var < this.numChecked.length; var++)
+        {
+            this.numChecked[var] += other.numChecked[var];
+            this.numErrors[var] += other.numErrors[var];
+        }
+    }
+
+    // Evaluate a learned CP-net against a corpus of optimal examples over the same variables
+    static LearningEvaluation of(PreferenceSpecification learned, List<OptimalExample> corpus)
+    {
+        FrozenPreferenceSpecification model = learned.freeze();
+        VariableIndex index = model.getVariableIndex();
+        int numChunks = (corpus.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // Each worker gets its own container from the supplier, so no counts are shared between threads
+        LearningEvaluation evaluation = IntStream.range(0,numChunks).parallel().collect(() -> new LearningEvaluation(index),
+                (partial,chunk) ->
+                {
+                    for (OptimalExample example : corpus.subList(chunk * CHUNK_SIZE,Math.min(corpus.size(),(chunk + 1) * CHUNK_SIZE)))
+                    {
+                        partial.check(model,example);
+                    }
+                },
+                LearningEvaluation::mergeInto);
+        if (evaluation.numExamples != corpus.size())
+        {
+            throw new RuntimeException("evaluation lost or double-counted examples");
+        }
+        return evaluation;
+    }
+    // Helper function
+    private void check(FrozenPreferenceSpecification model, OptimalExample example)
+    {
+        long assignedMask = this.index.assignedMask(example.condition);
+        long optimum = this.index.pack(example.optimum);
+        boolean reproduced = true;
+        for (int var = 0; var < this.index.size(); var++)
+        {
+            if ((assignedMask & (1L << var)) != 0)
+            {
+                continue;
+            }
+            byte expected = ((optimum & (1L << var)) != 0) ? CompiledCPT.TRUE : CompiledCPT.FALSE;
+            this.numChecked[var]++;
+            if (model.preferredValue(var,optimum) != expected)
+            {
+                this.numErrors[var]++;
+                reproduced = false;
+            }
+        }
+        this.numExamples++;
+        if (reproduced)
+        {
+            this.numReproduced++;
+        }
+    }
+
+    // Evaluate a learned CP-net against optimal examples sampled from a reference CP-net
+    static LearningEvaluation of(PreferenceSpecification learned, PreferenceSpecification reference, int samples, long seed)
+    {
+        return LearningEvaluation.of(learned,LearningEvaluation.sample(reference,samples,seed));
+    }
+
+    // Sample optimal examples of a complete acyclic CP-net, conditioning on each variable with probability 2/3 like
+    //  OptimalExample.uniformlyRandomExample
+    // Chunks are sampled in parallel, each from its own generator derived from the seed, so the result depends only
+    //  on the seed; a shorter sample with the same seed is a prefix of a longer one
+    static List<OptimalExample> sample(PreferenceSpecification reference, int samples, long seed)
+    {
+        FrozenPreferenceSpecification model = reference.freeze();
+        VariableIndex index = model.getVariableIndex();
+        int numChunks = (samples + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return IntStream.range(0,numChunks).parallel().mapToObj(chunk ->
+        {
+            Random rng = new Random(seed * 1_000_003L + chunk);
+            ArrayList<Assignment> conditions = new ArrayList<Assignment>();
+            for (int i = chunk * CHUNK_SIZE; i < Math.min(samples,(chunk + 1) * CHUNK_SIZE); i++)
+            {
+                Assignment condition = new Assignment();
+                for (int var = 0; var < index.size(); var++)
+                {
+                    int choice = rng.nextInt(3);
+                    if (choice < 2)
+                    {
+                        condition.put(index.name(var),choice == 0);
+                    }
+                }
+                conditions.add(condition);
+            }
+            return OptimalExample.optimaGiven(model,conditions);
+        }).flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    // Fraction of examples the learned net reproduces exactly
+    public double agreement()
+    {
+        return (this.numExamples == 0) ? 1.0 : this.numReproduced / (double) this.numExamples;
+    }
+    // Fraction of the examples not conditioned on the variable where the learned net prefers the other value (or has
+    //  no preference)
+    public double errorRate(String var)
+    {
+        int id = this.index.id(var);
+        return (this.numChecked[id] == 0) ? 0.0 : this.numErrors[id] / (double) this.numChecked[id];
+    }
+    // Mean of the per-variable error rates
+    public double meanErrorRate()
+    {
+        double total = 0;
+        for (int var = 0; var < this.index.size(); var++)
+        {
+            total += this.errorRate(this.index.name(var));
+        }
+        return (this.index.size() == 0) ? 0.0 : total / this.index.size();
+    }
+
+    // Sample-complexity curves: for each random reference net, learn from growing prefixes of one seeded stream of
+    //  examples and evaluate each learned net on held-out examples
+    public static void main(String[] args)
+    {
+        int numNets = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+        int numVars = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        int inDegreeBound = (args.length > 2) ? Integer.parseInt(args[2]) : 2;
+        int[] exampleCounts = Arrays.stream(((args.length > 3) ? args[3] : "10,20,50,100,200").split(",")).mapToInt(Integer::parseInt).toArray();
+        int numHeldOut = (args.length > 4) ? Integer.parseInt(args[4]) : 1000;
+        long seed = (args.length > 5) ? Long.parseLong(args[5]) : 0L;
+        boolean perVariable = (args.length > 6) && Boolean.parseBoolean(args[6]);
+
+        // Nets are independent, so they are handled in parallel; rows are printed in net order afterwards
+        List<ArrayList<String>> rowsByNet = IntStream.range(0,numNets).parallel().mapToObj(net ->
+        {
+            ArrayList<String> rows = new ArrayList<String>();
+            long netSeed = seed * 1_000_003L + net;
+            PreferenceSpecification reference = PreferenceSpecification.random(inDegreeBound,numVars,new Random(netSeed));
+            HashSet<String> allVars = new HashSet<String>(reference.getVars());
+            List<OptimalExample> training = LearningEvaluation.sample(reference,Arrays.stream(exampleCounts).max().orElse(0),2 * netSeed);
+            List<OptimalExample> heldOut = LearningEvaluation.sample(reference,numHeldOut,2 * netSeed + 1);
+            for (int numExamples : exampleCounts)
+            {
+                HashSet<OptimalExample> exampleSet = new HashSet<OptimalExample>(training.subList(0,numExamples));
+                LearningResult result = CPNetLearningFromOptimalExamples.learn(allVars,exampleSet,inDegreeBound,LearningOrders.arbitrary());
+                LearningEvaluation evaluation = LearningEvaluation.of(result.learned,heldOut);
+                String prefix = String.format("%d,%d,%d,%b",net,numExamples,exampleSet.size(),result.isComplete());
+                if (perVariable)
+                {
+                    for (int var = 0; var < evaluation.index.size(); var++)
+                    {
+                        String name = evaluation.index.name(var);
+                        rows.add(String.format("%s,%s,%.4f",prefix,name,evaluation.errorRate(name)));
+                    }
+                }
+                else
+                {
+                    rows.add(String.format("%s,%d,%.4f,%.4f,%b",prefix,result.candidatesEvaluated,evaluation.agreement(),
+                            evaluation.meanErrorRate(),CPNetDiff.diff(reference,result.learned).isEquivalent()));
+                }
+            }
+            return rows;
+        }).collect(Collectors.toList());
+
+        System.out.println(perVariable ? "net,examples,distinctExamples,complete,variable,errorRate"
+                : "net,examples,distinctExamples,complete,candidatesEvaluated,agreement,meanVariableError,equivalent");
+        for (ArrayList<String> rows : rowsByNet)
+        {
+            for (String row : rows)
+            {
+                System.out.println(row);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.*;
+
+// Chooses the order in which the learner tries variables and candidate parent sets
+// The default methods keep the given order (hash set order for variables and for candidate parent sets), which is
+//  the order learn() has always used
+interface LearningOrder
+{
+    // Order in which to try the variables not yet added in this round
+    default List<String> orderVariables(List<String> unaddedVars, List<String> addedOrder)
+    {
+        return unaddedVars;
+    }
+    // Order in which to try same-size candidate parent sets (drawn from the added variables) for var
+    default Iterable<Set<String>> orderParentSets(String var, Iterable<Set<String>> candidateParentSets, List<String> addedOrder)
+    {
+        return candidateParentSets;
+    }
+}
+
+// Ordering strategies for the learner
+// None of them change whether learning succeeds, only which consistent CP-net is found and how many candidates get
+//  evaluated along the way
+// (see LearningOrderBenchmark for comparing them)
+class LearningOrders
+{
+    // The learner's original order
+    static LearningOrder arbitrary()
+    {
+        return new LearningOrder(){};
+    }
+
+    // Try variables with the fewest pairs of conflicting examples first
+    // Few conflicts usually means a small parent set suffices (no conflicts at all means no parents are needed)
+    static LearningOrder fewestConflictsFirst(Set<String> allVars, Set<OptimalExample> exampleSet)
+    {
+        HashMap<String,Long> varToConflicts = new HashMap<String,Long>();
+        for (String var : allVars)
+        {
+            varToConflicts.put(var,ConflictWitnesses.numConflictingPairs(var,exampleSet));
+        }
+        return new LearningOrder()
+        {
+            @Override
+            public List<String> orderVariables(List<String> unaddedVars, List<String> addedOrder)
+            {
+                ArrayList<String> ordered = new ArrayList<String>(unaddedVars);
+                ordered.sort(Comparator.comparing((String var) -> varToConflicts.get(var)).thenComparing(var -> var));
+                return ordered;
+            }
+        };
+    }
+
+    // Try parent sets drawn from the most recently added variables first
+    // A variable that could not be added before usually needs the variable that was just added as a parent
+    static LearningOrder recentParentsFirst()
+    {
+        return new LearningOrder()
+        {
+            @Override
+            public Iterable<Set<String>> orderParentSets(String var, Iterable<Set<String>> candidateParentSets, List<String> addedOrder)
+            {
+                HashMap<String,Integer> varToPosition = new HashMap<String,Integer>();
+                for (int i = 0; i < addedOrder.size(); i++)
+                {
+                    varToPosition.put(addedOrder.get(i),i);
+                }
+                ArrayList<Set<String>> ordered = new ArrayList<Set<String>>();
+                candidateParentSets.forEach(ordered::add);
+                ordered.sort(Comparator.comparing((Set<String> parents) -> -LearningOrders.recency(parents,varToPosition,true))
+                        .thenComparing(parents -> -LearningOrders.recency(parents,varToPosition,false)));
+                return ordered;
+            }
+        };
+    }
+    // Helper function
+    // Latest (or summed) position in the order of addition of the given variables
+    private static int recency(Set<String> vars, Map<String,Integer> varToPosition, boolean latest)
+    {
+        int score = latest ? -1 : 0;
+        for (String var : vars)
+        {
+            score = latest ? Math.max(score,varToPosition.get(var)) : score + varToPosition.get(var);
+        }
+        return score;
+    }
+
+    // Score parents by the mutual information between their values and the child's value in the examples' optima
+    //  (computed once, over the examples not conditioned on the child)
+    // Variables whose optimal value varies least (lowest entropy, e.g. unconditional preferences) are tried first,
+    //  and parent sets with the highest total mutual information with the child are tried first
+    static LearningOrder mutualInformation(Set<String> allVars, Set<OptimalExample> exampleSet)
+    {
+        VariableIndex index = new VariableIndex(allVars);
+        int numVars = index.size();
+        double[] entropy = new double[numVars];
+        double[][] mutualInformation = new double[numVars][numVars];
+        for (int child = 0; child < numVars; child++)
+        {
+            String childName = index.name(child);
+            // counts[parent][childValue][parentValue]
+            int[][][] counts = new int[numVars][2][2];
+            int numRelevant = 0;
+            for (OptimalExample example : exampleSet)
+            {
+                Boolean childVal = example.optimum.get(childName);
+                if (example.condition.containsKey(childName) || childVal == null)
+                {
+                    continue;
+                }
+                numRelevant++;
+                for (int parent = 0; parent < numVars; parent++)
+                {
+                    Boolean parentVal = example.optimum.get(index.name(parent));
+                    if (parentVal != null)
+                    {
+                        counts[parent][childVal ? 1 : 0][parentVal ? 1 : 0]++;
+                    }
+                }
+            }
+            if (numRelevant == 0)
+            {
+                continue;
+            }
+            int[][] childCounts = counts[child];
+            entropy[child] = LearningOrders.entropy(new double[]{childCounts[0][0] + childCounts[0][1],childCounts[1][0] + childCounts[1][1]},numRelevant);
+            for (int parent = 0; parent < numVars; parent++)
+            {
+                if (parent != child)
+                {
+                    mutualInformation[child][parent] = LearningOrders.mutualInformation(counts[parent]);
+                }
+            }
+        }
+
+        return new LearningOrder()
+        {
+            @Override
+            public List<String> orderVariables(List<String> unaddedVars, List<String> addedOrder)
+            {
+                ArrayList<String> ordered = new ArrayList<String>(unaddedVars);
+                ordered.sort(Comparator.comparing((String var) -> entropy[index.id(var)]).thenComparing(var -> var));
+                return ordered;
+            }
+            @Override
+            public Iterable<Set<String>> orderParentSets(String var, Iterable<Set<String>> candidateParentSets, List<String> addedOrder)
+            {
+                int child = index.id(var);
+                ArrayList<Set<String>> ordered = new ArrayList<Set<String>>();
+                candidateParentSets.forEach(ordered::add);
+                ordered.sort(Comparator.comparing((Set<String> parents) ->
+                {
+                    double total = 0;
+                    for (String parent : parents)
+                    {
+                        total += mutualInformation[child][index.id(parent)];
+                    }
+                    return -total;
+                }));
+                return ordered;
+            }
+        };
+    }
+    // Helper function
+    private static double entropy(double[] counts, double total)
+    {
+        double h = 0;
+        for (double count : counts)
+        {
+            if (count > 0)
+            {
+                h -= (count / total) * Math.log(count / total);
+            }
+        }
+        return h;
+    }
+    // Helper function
+    // Mutual information of a 2x2 contingency table
+    private static double mutualInformation(int[][] joint)
+    {
+        double total = joint[0][0] + joint[0][1] + joint[1][0] + joint[1][1];
+        if (total == 0)
+        {
+            return 0;
+        }
+        double mi = 0;
+        for (int a = 0; a < 2; a++)
+        {
+            for (int b = 0; b < 2; b++)
+            {
+                if (joint[a][b] > 0)
+                {
+                    double pab = joint[a][b] / total;
+                    double pa = (joint[a][0] + joint[a][1]) / total;
+                    double pb = (joint[0][b] + joint[1][b]) / total;
+                    mi += pab * Math.log(pab / (pa * pb));
+                }
+            }
+        }
+        return mi;
+    }
+
+    // Variable ordering from one strategy and parent set ordering from another
+    static LearningOrder combined(LearningOrder variableOrder, LearningOrder parentSetOrder)
+    {
+        return new LearningOrder()
+        {
+            @Override
+            public List<String> orderVariables(List<String> unaddedVars, List<String> addedOrder)
+            {
+                return variableOrder.orderVariables(unaddedVars,addedOrder);
+            }
+            @Override
+            public Iterable<Set<String>> orderParentSets(String var, Iterable<Set<String>> candidateParentSets, List<String> addedOrder)
+            {
+                return parentSetOrder.orderParentSets(var,candidateParentSets,addedOrder);
+            }
+        };
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+// Fixed-size byte storage outside the Java heap, for outcome-space data too big for heap objects
+// Backed by direct ByteBuffers, or by a memory-mapped file so the OS can page it out
+// Direct memory is capped by -XX:MaxDirectMemorySize (by default the maximum heap size, -Xmx), and allocate throws
+//  OutOfMemoryError past the cap; allocateOrMap uses a temporary file above DIRECT_LIMIT instead, so large buffers
+//  need no JVM flags
+// Addressed by long offsets; internally split into chunks because a single ByteBuffer is limited to 2 GiB
+// Not synchronized: concurrent writers must touch disjoint bytes
+class OffHeapBuffer implements AutoCloseable
+{
+    // 128 MiB chunks (a multiple of 8, so aligned longs never straddle two chunks)
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    // Largest buffer allocateOrMap keeps in direct memory (256 MiB)
+    static final long DIRECT_LIMIT = 1L << 28;
+
+    private final long capacity;
+    private final ByteBuffer[] chunks;
+    // Open file for file-backed buffers, otherwise null
+    private final FileChannel channel;
+
+    // Constructor
+    private OffHeapBuffer(long capacity, ByteBuffer[] chunks, FileChannel channel)
+    {
+        this.capacity = capacity;
+        this.chunks = chunks;
+        this.channel = channel;
+    }
+    // Zero-filled memory-backed buffer
+    static OffHeapBuffer allocate(long capacity)
+    {
+        ByteBuffer[] chunks = new ByteBuffer[OffHeapBuffer.numChunks(capacity)];
+        for (int i = 0; i < chunks.length; i++)
+        {
+            chunks[i] = ByteBuffer.allocateDirect((int) OffHeapBuffer.chunkLength(capacity,i)).order(ByteOrder.nativeOrder());
+        }
+        return new OffHeapBuffer(capacity,chunks,null);
+    }
+    // Buffer mapped onto a file (created, and extended with zeros, if needed); contents persist after close
+    static OffHeapBuffer mapFile(Path file, long capacity) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file,StandardOpenOption.CREATE,StandardOpenOption.READ,StandardOpenOption.WRITE);
+        return new OffHeapBuffer(capacity,OffHeapBuffer.map(channel,capacity),channel);
+    }
+    // Zero-filled buffer: memory-backed up to DIRECT_LIMIT, otherwise mapped onto a temporary file
+    // The temporary file is unlinked as soon as it is mapped (where the OS allows it), and its space is freed once
+    //  the buffer is garbage collected
+    static OffHeapBuffer allocateOrMap(long capacity) throws IOException
+    {
+        if (capacity <= DIRECT_LIMIT)
+        {
+            return OffHeapBuffer.allocate(capacity);
+        }
+        Path file = Files.createTempFile("offheap",".bin");
+        // Mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file,StandardOpenOption.READ,StandardOpenOption.WRITE,StandardOpenOption.DELETE_ON_CLOSE))
+        {
+            return new OffHeapBuffer(capacity,OffHeapBuffer.map(channel,capacity),null);
+        }
+    }
+    // Helper function
+    private static ByteBuffer[] map(FileChannel channel, long capacity) throws IOException
+    {
+        ByteBuffer[] chunks = new ByteBuffer[OffHeapBuffer.numChunks(capacity)];
+        for (int i = 0; i < chunks.length; i++)
+        {
+            chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,i * CHUNK_SIZE,OffHeapBuffer.chunkLength(capacity,i)).order(ByteOrder.nativeOrder());
+        }
+        return chunks;
+    }
+    // Helper function
+    private static int numChunks(long capacity)
+    {
+        return (int) ((capacity + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+    }
+    // Helper function
+    private static long chunkLength(long capacity, int chunk)
+    {
+        return Math.min(CHUNK_SIZE,capacity - chunk * CHUNK_SIZE);
+    }
+
+    public long capacity()
+    {
+        return this.capacity;
+    }
+
+    public byte getByte(long offset)
+    {
+        return this.chunks[(int) (offset >>> CHUNK_SHIFT)].get((int) (offset & (CHUNK_SIZE - 1)));
+    }
+    public void putByte(long offset, byte value)
+    {
+        this.chunks[(int) (offset >>> CHUNK_SHIFT)].put((int) (offset & (CHUNK_SIZE - 1)),value);
+    }
+    // Offsets of longs must be multiples of 8
+    public long getLong(long offset)
+    {
+        return this.chunks[(int) (offset >>> CHUNK_SHIFT)].getLong((int) (offset & (CHUNK_SIZE - 1)));
+    }
+    public void putLong(long offset, long value)
+    {
+        this.chunks[(int) (offset >>> CHUNK_SHIFT)].putLong((int) (offset & (CHUNK_SIZE - 1)),value);
+    }
+
+    // Set every byte to zero
+    public void clear()
+    {
+        for (ByteBuffer chunk : this.chunks)
+        {
+            for (int i = 0; i + 8 <= chunk.capacity(); i += 8)
+            {
+                chunk.putLong(i,0L);
+            }
+            for (int i = chunk.capacity() & ~7; i < chunk.capacity(); i++)
+            {
+                chunk.put(i,(byte) 0);
+            }
+        }
+    }
+
+    // Close the backing file, if any (direct memory is released once the buffer is garbage collected)
+    @Override
+    public void close() throws IOException
+    {
+        if (this.channel != null)
+        {
+            this.channel.close();
+        }
+    }
+}
+
+// Off-heap bitset indexed by outcome word, e.g. a visited set or a row of the dominance closure
+class OffHeapBitSet
+{
+    private final OffHeapBuffer buffer;
+    private final long numBits;
+
+    // Constructor over a buffer with room for numBits bits (rounded up to whole longs)
+    public OffHeapBitSet(OffHeapBuffer buffer, long numBits)
+    {
+        if (buffer.capacity() < OffHeapBitSet.bytesFor(numBits))
+        {
+            throw new RuntimeException("off-heap buffer too small for the bitset");
+        }
+        this.buffer = buffer;
+        this.numBits = numBits;
+    }
+    // Bytes needed to hold numBits bits
+    static long bytesFor(long numBits)
+    {
+        return ((numBits + 63) >>> 6) << 3;
+    }
+
+    public long size()
+    {
+        return this.numBits;
+    }
+    public boolean get(long bit)
+    {
+        return (this.buffer.getLong((bit >>> 6) << 3) & (1L << bit)) != 0;
+    }
+    // Return true iff the bit was not already set
+    public boolean set(long bit)
+    {
+        long offset = (bit >>> 6) << 3;
+        long word = this.buffer.getLong(offset);
+        long updated = word | (1L << bit);
+        if (updated == word)
+        {
+            return false;
+        }
+        this.buffer.putLong(offset,updated);
+        return true;
+    }
+    public void clear()
+    {
+        this.buffer.clear();
+    }
+    // Number of set bits
+    public long cardinality()
+    {
+        long count = 0;
+        for (long offset = 0; offset < OffHeapBitSet.bytesFor(this.numBits); offset += 8)
+        {
+            count += Long.bitCount(this.buffer.getLong(offset));
+        }
+        return count;
+    }
+}
+
+// Off-heap array of small counts (one byte each) indexed by outcome word
+class OffHeapByteArray
+{
+    private final OffHeapBuffer buffer;
+
+    // Constructor
+    public OffHeapByteArray(OffHeapBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    public long length()
+    {
+        return this.buffer.capacity();
+    }
+    public byte get(long index)
+    {
+        return this.buffer.getByte(index);
+    }
+    public void put(long index, byte value)
+    {
+        this.buffer.putByte(index,value);
+    }
+}
+
+// Off-heap stack of ints (e.g., outcome words over at most 32 variables, read back with Integer.toUnsignedLong)
+// The first chunk starts at 4 KiB and doubles until it reaches 32 MiB, after which the stack grows a full chunk at a
+//  time, so its footprint follows the largest depth actually reached
+class OffHeapIntStack
+{
+    // 32 MiB chunks
+    private static final int CHUNK_SHIFT = 23;
+    private static final int CHUNK_INTS = 1 << CHUNK_SHIFT;
+    // Starting size of the first chunk (4 KiB)
+    private static final int INITIAL_INTS = 1 << 10;
+
+    private final ArrayList<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    private long size = 0;
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+    public long size()
+    {
+        return this.size;
+    }
+    public void push(int value)
+    {
+        int chunk = (int) (this.size >>> CHUNK_SHIFT);
+        int offset = 4 * (int) (this.size & (CHUNK_INTS - 1));
+        if (chunk == this.chunks.size())
+        {
+            int numInts = this.chunks.isEmpty() ? INITIAL_INTS : CHUNK_INTS;
+            this.chunks.add(ByteBuffer.allocateDirect(4 * numInts).order(ByteOrder.nativeOrder()));
+        }
+        else if (offset == this.chunks.get(chunk).capacity())
+        {
+            // Only the first chunk can be short; it is full, so double it
+            ByteBuffer old = this.chunks.get(chunk);
+            ByteBuffer grown = ByteBuffer.allocateDirect(2 * old.capacity()).order(ByteOrder.nativeOrder());
+            grown.put(0,old,0,old.capacity());
+            this.chunks.set(chunk,grown);
+        }
+        this.chunks.get(chunk).putInt(offset,value);
+        this.size++;
+    }
+    public int pop()
+    {
+        if (this.size == 0)
+        {
+            throw new RuntimeException("pop from an empty stack");
+        }
+        this.size--;
+        return this.chunks.get((int) (this.size >>> CHUNK_SHIFT)).getInt(4 * (int) (this.size & (CHUNK_INTS - 1)));
+    }
+}
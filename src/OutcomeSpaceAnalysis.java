@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.LongStream;
+
+// Analyses over the whole outcome space of a CP-net, keeping per-outcome data off the heap (see OffHeapBuffer)
+// Unlike PreferenceSpecification.inducedPreferenceGraph and allEntailments, which build heap objects and stop at 15
+//  variables, these work on outcome words and handle up to 32 variables (2^32 outcomes: 512 MiB per bitset,
+//  4 GiB of flip counts), optionally backed by files
+// Without a file, storage above OffHeapBuffer.DIRECT_LIMIT goes to a temporary file rather than direct memory, so
+//  32 variables work without raising -XX:MaxDirectMemorySize
+class OutcomeSpaceAnalysis
+{
+    // Outcomes per parallel work unit when filling per-outcome arrays
+    private static final long CHUNK_OUTCOMES = 1L << 16;
+
+    private final FrozenPreferenceSpecification model;
+    private final int numVars;
+
+    // Constructor
+    public OutcomeSpaceAnalysis(FrozenPreferenceSpecification model)
+    {
+        this.model = model;
+        this.numVars = model.getVariableIndex().size();
+        if (this.numVars > 32)
+        {
+            throw new RuntimeException("outcome-space analysis supports at most 32 preference variables");
+        }
+    }
+
+    // Number of outcomes, 2^(number of variables)
+    public long numOutcomes()
+    {
+        return 1L << this.numVars;
+    }
+
+    // Storage sized for this CP-net's outcome space, mapped onto the given file, or for file == null chosen by
+    //  OffHeapBuffer.allocateOrMap
+    public OffHeapBitSet newOutcomeBitSet(Path file) throws IOException
+    {
+        long bytes = OffHeapBitSet.bytesFor(this.numOutcomes());
+        OffHeapBuffer buffer = (file == null) ? OffHeapBuffer.allocateOrMap(bytes) : OffHeapBuffer.mapFile(file,bytes);
+        return new OffHeapBitSet(buffer,this.numOutcomes());
+    }
+    public OffHeapByteArray newOutcomeByteArray(Path file) throws IOException
+    {
+        OffHeapBuffer buffer = (file == null) ? OffHeapBuffer.allocateOrMap(this.numOutcomes()) : OffHeapBuffer.mapFile(file,this.numOutcomes());
+        return new OffHeapByteArray(buffer);
+    }
+
+    // Store the number of improving flips from each outcome in counts[word], working on chunks of outcomes in parallel
+    // Returns the number of outcomes with no improving flip (the undominated outcomes)
+    public long improvingFlipCounts(OffHeapByteArray counts)
+    {
+        if (counts.length() < this.numOutcomes())
+        {
+            throw new RuntimeException("off-heap array too small for the outcome space");
+        }
+        long numChunks = (this.numOutcomes() + CHUNK_OUTCOMES - 1) / CHUNK_OUTCOMES;
+        return LongStream.range(0,numChunks).parallel().map(chunk ->
+        {
+            long undominated = 0;
+            long end = Math.min(this.numOutcomes(),(chunk + 1) * CHUNK_OUTCOMES);
+            for (long word = chunk * CHUNK_OUTCOMES; word < end; word++)
+            {
+                byte numFlips = 0;
+                for (int var = 0; var < this.numVars; var++)
+                {
+                    if (this.model.isImprovingFlip(word,var))
+                    {
+                        numFlips++;
+                    }
+                }
+                counts.put(word,numFlips);
+                if (numFlips == 0)
+                {
+                    undominated++;
+                }
+            }
+            return undominated;
+        }).sum();
+    }
+
+    // Mark every outcome reachable from start by one or more improving flips, i.e., every outcome the CP-net entails
+    //  to be better than start (start itself is marked only if it lies on a cycle)
+    // This is the start's row of the dominance closure; `reached` is used as the visited set and should be clear
+    // Returns the number of outcomes marked
+    public long reachableFrom(long start, OffHeapBitSet reached)
+    {
+        if (reached.size() < this.numOutcomes())
+        {
+            throw new RuntimeException("off-heap bitset too small for the outcome space");
+        }
+        long numReached = 0;
+        OffHeapIntStack frontier = new OffHeapIntStack();
+        frontier.push((int) start);
+        while (!frontier.isEmpty())
+        {
+            long current = Integer.toUnsignedLong(frontier.pop());
+            for (int var = 0; var < this.numVars; var++)
+            {
+                if (this.model.isImprovingFlip(current,var))
+                {
+                    long flipped = current ^ (1L << var);
+                    if (reached.set(flipped))
+                    {
+                        numReached++;
+                        frontier.push((int) flipped);
+                    }
+                }
+            }
+        }
+        return numReached;
+    }
+}
@@ -0,0 +1,471 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Small local HTTP server for querying a CP-net, meant for load testing on a single machine
+// Serves a frozen snapshot of the CP-net, so requests never contend on locks
+// Conditions and outcomes are written like Assignment.toString, e.g., "(Entree=true,Wine=false)" (parentheses optional)
+//  GET  /optimum?condition=...             -> the most-preferred outcome given the condition; concurrent queries are
+//                                             grouped into shared batch sweeps (see OptimumBatcher)
+//  POST /optimum                           -> body has one condition per line, answered in one batch sweep, one outcome per line
+//  GET  /preferred?var=...&condition=...   -> preferred value of var given the condition ("true", "false", or "null")
+//  GET  /dominates?better=...&worse=...    -> whether the CP-net entails better>worse
+//  GET  /stats                             -> per-endpoint request counts, latency histograms, and 503 rejections,
+//                                             plus how many sweeps the grouped /optimum queries took
+class PreferenceQueryServer
+{
+    // Fields
+
+    // The CP-net being served
+    private final FrozenPreferenceSpecification model;
+    private final HttpServer server;
+    // Runs request handlers (virtual threads when the JDK has them)
+    private final ExecutorService executor;
+    // Requests beyond this many in flight are turned away with 503
+    private final Semaphore inFlight;
+    // Endpoint path -> latency histogram / number of requests turned away
+    private final LinkedHashMap<String,LatencyHistogram> endpointToLatency;
+    private final LinkedHashMap<String,AtomicLong> endpointToRejections;
+    // Groups single-condition /optimum queries into batch sweeps
+    private final OptimumBatcher optimumBatcher;
+
+    // Constructor
+    // Port 0 picks a free port (see getPort)
+    public PreferenceQueryServer(PreferenceSpecification spec, int port, int maxInFlight) throws IOException
+    {
+        this.model = spec.freeze();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1",port),0);
+        this.executor = PreferenceQueryServer.newRequestExecutor();
+        this.server.setExecutor(this.executor);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.endpointToLatency = new LinkedHashMap<String,LatencyHistogram>();
+        this.endpointToRejections = new LinkedHashMap<String,AtomicLong>();
+        for (String endpoint : new String[]{"/optimum","/preferred","/dominates"})
+        {
+            this.endpointToLatency.put(endpoint,new LatencyHistogram());
+            this.endpointToRejections.put(endpoint,new AtomicLong());
+            this.server.createContext(endpoint,this::handle);
+        }
+        this.optimumBatcher = new OptimumBatcher(this.model);
+        this.server.createContext("/stats",exchange -> PreferenceQueryServer.respond(exchange,200,this.stats()));
+    }
+    // Helper function
+    // Use a virtual-thread-per-task executor if this JDK has one, otherwise a cached platform thread pool
+    private static ExecutorService newRequestExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // Methods
+
+    public void start()
+    {
+        this.server.start();
+    }
+    public void stop()
+    {
+        this.server.stop(0);
+        this.executor.shutdown();
+    }
+    public int getPort()
+    {
+        return this.server.getAddress().getPort();
+    }
+
+    // Pretty string of the latency histograms and rejection counts, then the grouping of /optimum queries
+    public String stats()
+    {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String,LatencyHistogram> entry : this.endpointToLatency.entrySet())
+        {
+            out.append(entry.getKey()).append(' ').append(entry.getValue().toString())
+                    .append(" rejected=").append(this.endpointToRejections.get(entry.getKey()).get()).append('\n');
+        }
+        out.append("grouped /optimum queries=").append(this.optimumBatcher.numQueries())
+                .append(" sweeps=").append(this.optimumBatcher.numSweeps()).append('\n');
+        return out.toString();
+    }
+
+    // Helper function
+    // Common request handling: in-flight limit, dispatch, error reporting, latency recording
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        String endpoint = exchange.getHttpContext().getPath();
+        if (!this.inFlight.tryAcquire())
+        {
+            this.endpointToRejections.get(endpoint).incrementAndGet();
+            PreferenceQueryServer.respond(exchange,503,"too many requests in flight\n");
+            return;
+        }
+        long start = System.nanoTime();
+        try
+        {
+            String answer;
+            Map<String,String> params = PreferenceQueryServer.queryParams(exchange.getRequestURI().getRawQuery());
+            if (endpoint.equals("/optimum"))
+            {
+                answer = exchange.getRequestMethod().equals("POST") ? this.batchOptimum(exchange.getRequestBody()) : this.optimum(params);
+            }
+            else if (endpoint.equals("/preferred"))
+            {
+                answer = this.preferred(params);
+            }
+            else
+            {
+                answer = this.dominates(params);
+            }
+            PreferenceQueryServer.respond(exchange,200,answer);
+        }
+        catch (RuntimeException e)
+        {
+            PreferenceQueryServer.respond(exchange,400,String.valueOf(e.getMessage()).concat("\n"));
+        }
+        finally
+        {
+            this.inFlight.release();
+            this.endpointToLatency.get(endpoint).record(System.nanoTime() - start);
+        }
+    }
+
+    // Endpoints
+
+    private String optimum(Map<String,String> params)
+    {
+        Assignment condition = PreferenceQueryServer.parseAssignment(PreferenceQueryServer.required(params,"condition"));
+        VariableIndex index = this.model.getVariableIndex();
+        long optimum = this.optimumBatcher.optimumGiven(index.assignedMask(condition),index.pack(condition));
+        return index.unpack(optimum).toString().concat("\n");
+    }
+    private String batchOptimum(InputStream body) throws IOException
+    {
+        ArrayList<Assignment> conditions = new ArrayList<Assignment>();
+        for (String line : new String(body.readAllBytes(),StandardCharsets.UTF_8).split("\n"))
+        {
+            if (!line.trim().isEmpty())
+            {
+                conditions.add(PreferenceQueryServer.parseAssignment(line));
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        for (OptimalExample example : OptimalExample.optimaGiven(this.model,conditions))
+        {
+            out.append(example.optimum.toString()).append('\n');
+        }
+        return out.toString();
+    }
+    private String preferred(Map<String,String> params)
+    {
+        Boolean preferredValue = this.model.preferredValueGiven(PreferenceQueryServer.required(params,"var"),
+                PreferenceQueryServer.parseAssignment(PreferenceQueryServer.required(params,"condition")));
+        return String.valueOf(preferredValue).concat("\n");
+    }
+    private String dominates(Map<String,String> params)
+    {
+        Assignment better = PreferenceQueryServer.parseAssignment(PreferenceQueryServer.required(params,"better"));
+        Assignment worse = PreferenceQueryServer.parseAssignment(PreferenceQueryServer.required(params,"worse"));
+        return String.valueOf(this.model.dominates(better,worse)).concat("\n");
+    }
+
+    // Parsing and I/O helpers
+
+    // Read "(var1=val1,var2=val2,...)" back into an Assignment; values are true or false, in any case
+    static Assignment parseAssignment(String text)
+    {
+        String trimmed = text.trim();
+        if (trimmed.startsWith("(") && trimmed.endsWith(")"))
+        {
+            trimmed = trimmed.substring(1,trimmed.length() - 1);
+        }
+        Assignment assn = new Assignment();
+        for (String pair : trimmed.split(","))
+        {
+            if (pair.trim().isEmpty())
+            {
+                continue;
+            }
+            String[] varAndVal = pair.split("=");
+            if (varAndVal.length != 2)
+            {
+                throw new RuntimeException("malformed assignment: ".concat(text));
+            }
+            // Boolean.parseBoolean would read anything but "true" as false, so a typo would silently flip a value
+            String value = varAndVal[1].trim();
+            if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+            {
+                throw new RuntimeException("value must be true or false: ".concat(pair.trim()));
+            }
+            assn.put(varAndVal[0].trim(),value.equalsIgnoreCase("true"));
+        }
+        return assn;
+    }
+    private static Map<String,String> queryParams(String rawQuery)
+    {
+        HashMap<String,String> params = new HashMap<String,String>();
+        if (rawQuery == null)
+        {
+            return params;
+        }
+        for (String param : rawQuery.split("&"))
+        {
+            int split = param.indexOf('=');
+            if (split > 0)
+            {
+                params.put(URLDecoder.decode(param.substring(0,split),StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(split + 1),StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+    private static String required(Map<String,String> params, String name)
+    {
+        String value = params.get(name);
+        if (value == null)
+        {
+            throw new RuntimeException("missing query parameter: ".concat(name));
+        }
+        return value;
+    }
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type","text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status,bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+
+    // Serve a CP-net from an XML file: PreferenceQueryServer <xmlFile> <port> [maxInFlight]
+    public static void main(String[] args) throws IOException
+    {
+        int maxInFlight = (args.length > 2) ? Integer.parseInt(args[2]) : 1024;
+        PreferenceQueryServer queryServer = new PreferenceQueryServer(new PreferenceSpecification(args[0]),Integer.parseInt(args[1]),maxInFlight);
+        queryServer.start();
+        System.out.println("serving on port ".concat(String.valueOf(queryServer.getPort())));
+    }
+}
+
+// Groups concurrent single-condition optimum queries into one FrozenPreferenceSpecification.optimaGiven sweep
+// A query that finds no sweep running leads one: it takes every query waiting at that moment (its own included),
+//  sweeps them as one batch, and hands out the answers; queries that arrive during a sweep wait for the next one
+// So a lone query is answered right away, with no timer, and batches grow by themselves as requests pile up
+// Waiting uses a ReentrantLock rather than monitors, so virtual threads do not pin their carriers while they wait
+class OptimumBatcher
+{
+    // A query waiting for its sweep
+    private static class Pending
+    {
+        final long assignedMask;
+        final long values;
+        // Whether a sweep has answered the query (guarded by the batcher's lock), and its answer
+        boolean done = false;
+        long optimum;
+        RuntimeException error;
+
+        Pending(long assignedMask, long values)
+        {
+            this.assignedMask = assignedMask;
+            this.values = values;
+        }
+    }
+
+    private final FrozenPreferenceSpecification model;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition sweepFinished = this.lock.newCondition();
+    // Guarded by lock: queries not yet taken by a sweep, and whether a sweep is running
+    private ArrayList<Pending> waiting = new ArrayList<Pending>();
+    private boolean sweeping = false;
+    // Statistics
+    private final AtomicLong numQueries = new AtomicLong();
+    private final AtomicLong numSweeps = new AtomicLong();
+
+    // Constructor
+    public OptimumBatcher(FrozenPreferenceSpecification model)
+    {
+        this.model = model;
+    }
+
+    // Return the optimum given the condition, as FrozenPreferenceSpecification.optimumGiven(long,long) would
+    public long optimumGiven(long assignedMask, long values)
+    {
+        this.numQueries.incrementAndGet();
+        Pending query = new Pending(assignedMask,values);
+        this.lock.lock();
+        try
+        {
+            this.waiting.add(query);
+            while (!query.done)
+            {
+                if (!this.sweeping)
+                {
+                    this.sweeping = true;
+                    ArrayList<Pending> batch = this.waiting;
+                    this.waiting = new ArrayList<Pending>();
+                    this.lock.unlock();
+                    try
+                    {
+                        this.sweep(batch);
+                    }
+                    finally
+                    {
+                        this.lock.lock();
+                        for (Pending answered : batch)
+                        {
+                            answered.done = true;
+                        }
+                        this.sweeping = false;
+                        this.sweepFinished.signalAll();
+                    }
+                }
+                else
+                {
+                    this.sweepFinished.awaitUninterruptibly();
+                }
+            }
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+        if (query.error != null)
+        {
+            throw query.error;
+        }
+        return query.optimum;
+    }
+    // Helper function
+    // Fill in each query's optimum or error (run without the lock; optimumGiven publishes them under it)
+    private void sweep(ArrayList<Pending> batch)
+    {
+        this.numSweeps.incrementAndGet();
+        long[] assignedMasks = new long[batch.size()];
+        long[] values = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++)
+        {
+            assignedMasks[i] = batch.get(i).assignedMask;
+            values[i] = batch.get(i).values;
+        }
+        long[] optima = null;
+        try
+        {
+            optima = this.model.optimaGiven(assignedMasks,values);
+        }
+        catch (RuntimeException e)
+        {
+            // Some condition hit a missing entry (or the net is cyclic): answer one at a time, so only the queries
+            //  that fail get the error
+        }
+        for (int i = 0; i < batch.size(); i++)
+        {
+            Pending query = batch.get(i);
+            if (optima != null)
+            {
+                query.optimum = optima[i];
+            }
+            else
+            {
+                try
+                {
+                    query.optimum = this.model.optimumGiven(query.assignedMask,query.values);
+                }
+                catch (RuntimeException e)
+                {
+                    query.error = e;
+                }
+            }
+        }
+    }
+
+    // Number of queries answered through the batcher, and of sweeps they took
+    public long numQueries()
+    {
+        return this.numQueries.get();
+    }
+    public long numSweeps()
+    {
+        return this.numSweeps.get();
+    }
+}
+
+// Lock-free latency histogram with power-of-two microsecond buckets
+class LatencyHistogram
+{
+    // Bucket i counts latencies in [2^(i-1), 2^i) microseconds (bucket 0 is under one microsecond)
+    private final AtomicLongArray buckets = new AtomicLongArray(40);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    public void record(long nanos)
+    {
+        long micros = nanos / 1000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros),this.buckets.length() - 1);
+        this.buckets.incrementAndGet(bucket);
+        this.count.incrementAndGet();
+        this.totalNanos.addAndGet(nanos);
+    }
+
+    public long count()
+    {
+        return this.count.get();
+    }
+
+    // Upper bound (in microseconds) of the bucket containing the given quantile
+    public long quantileMicros(double quantile)
+    {
+        long target = (long) Math.ceil(quantile * this.count.get());
+        long seen = 0;
+        for (int i = 0; i < this.buckets.length(); i++)
+        {
+            seen += this.buckets.get(i);
+            if (seen >= target && seen > 0)
+            {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    // Pretty string "count=... mean=...us p50<=...us p99<=...us buckets=[...]"
+    @Override
+    public String toString()
+    {
+        long n = this.count.get();
+        StringBuilder out = new StringBuilder();
+        out.append("count=").append(n)
+                .append(" mean=").append((n == 0) ? 0 : this.totalNanos.get() / n / 1000).append("us")
+                .append(" p50<=").append(this.quantileMicros(0.5)).append("us")
+                .append(" p99<=").append(this.quantileMicros(0.99)).append("us")
+                .append(" buckets=[");
+        for (int i = 0; i < this.buckets.length(); i++)
+        {
+            long inBucket = this.buckets.get(i);
+            if (inBucket > 0)
+            {
+                out.append("<").append(1L << i).append("us:").append(inBucket).append(' ');
+            }
+        }
+        return out.toString().trim().concat("]");
+    }
+}
@@ -9,7 +9,14 @@ import org.w3c.dom.NodeList;
 import org.w3c.dom.Node;
 import org.w3c.dom.Element;
 import org.w3c.dom.Attr;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -30,6 +37,15 @@ class PreferenceSpecification
     // Variable name -> {Boolean -> value name}
     // Allows us to treat binary variable values as Booleans but recover their original names
     private HashMap<String,HashMap<Boolean,String>> varToValueNames;
+    // Interned variable ids, built on demand and discarded when the variable set changes
+    private VariableIndex variableIndex;
+    // Incremented whenever a variable or CP-table is added or replaced, so caches can tell when they are stale
+    // (Changes made directly to a CPTable returned by getCPT are not counted)
+    private long modificationCount;
+    // Decision-diagram encoding of the CP-tables used by preferredValueGiven, and the modification count it matches
+    //  (it is ignored once the CP-net changes)
+    private DecisionDiagram diagram;
+    private long diagramModificationCount;
 
     // Constructors
 
@@ -68,6 +84,8 @@ class PreferenceSpecification
     {
         this.varToCPT = new HashMap<String,CPTable>();
         this.varToValueNames = new HashMap<String,HashMap<Boolean,String>>();
+        XmlLoadEvent event = new XmlLoadEvent();
+        event.begin();
         try
         {
 
@@ -147,12 +165,52 @@ class PreferenceSpecification
                 }
             }
 
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.path = xmlFile;
+                event.variableCount = this.varToValueNames.size();
+                event.statementCount = stmtList.getLength();
+                event.commit();
+            }
+
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-//    public static PreferenceSpecification random(int degree,  int variables){todo}
+    // Generate a random complete acyclic CP-net over variables X0, X1, ..., each with at most `degree` parents
+    // Variables are placed in a random order and draw their parents from the variables placed before them;
+    //  every parent assignment gets a uniformly random preferred value
+    // (Parents that the random table turns out not to depend on are simplified away, as usual)
+    public static PreferenceSpecification random(int degree, int variables, Random rng)
+    {
+        ArrayList<String> placed = new ArrayList<String>();
+        for (int i = 0; i < variables; i++)
+        {
+            placed.add("X".concat(String.valueOf(i)));
+        }
+        PreferenceSpecification net = new PreferenceSpecification(new HashSet<String>(placed));
+        Collections.shuffle(placed,rng);
+        for (int i = 0; i < placed.size(); i++)
+        {
+            ArrayList<String> earlier = new ArrayList<String>(placed.subList(0,i));
+            Collections.shuffle(earlier,rng);
+            int numParents = Math.min(rng.nextInt(degree + 1),earlier.size());
+            HashSet<String> parents = new HashSet<String>(earlier.subList(0,numParents));
+            CPTable table = new CPTable(placed.get(i));
+            for (Assignment parentAssignment : Assignment.allAssignments(parents))
+            {
+                table = table.altered(parentAssignment,rng.nextBoolean());
+            }
+            net.setCPT(placed.get(i),table);
+        }
+        return net;
+    }
+    public static PreferenceSpecification random(int degree, int variables)
+    {
+        return PreferenceSpecification.random(degree,variables,new Random());
+    }
 
     // Methods
 
@@ -162,6 +220,16 @@ class PreferenceSpecification
         return this.varToValueNames.keySet();
     }
 
+    // Get the interned variable ids for this CP-net (shared with anything that needs to pack its outcomes)
+    public VariableIndex getVariableIndex()
+    {
+        if (this.variableIndex == null)
+        {
+            this.variableIndex = new VariableIndex(this.getVars());
+        }
+        return this.variableIndex;
+    }
+
     // Get a variable's CP-table
     // (The object itself, not a copy, so changes to the return value will affect the CP-net)
     public CPTable getCPT(String var)
@@ -169,6 +237,56 @@ class PreferenceSpecification
         return this.varToCPT.get(var);
     }
 
+    // Get the number of changes made through addVar, setCPT, and addPreference so far
+    public long getModificationCount()
+    {
+        return this.modificationCount;
+    }
+
+    // Make an immutable compiled snapshot of the CP-net that can be queried from many threads at once
+    // (Later changes to this object do not affect the snapshot)
+    public FrozenPreferenceSpecification freeze()
+    {
+        return new FrozenPreferenceSpecification(this);
+    }
+    // Encode the CP-tables as decision diagrams sharing one node table, for nets whose tables are too big to keep as
+    //  rows of Assignments (also a snapshot)
+    // Until the CP-net next changes, preferredValueGiven answers from the diagram
+    public DecisionDiagram compress()
+    {
+        this.useDiagram(new DecisionDiagram(this));
+        return this.diagram;
+    }
+    // Answer preferredValueGiven from a diagram of this CP-net's current CP-tables built elsewhere (see
+    //  CPNetLearningFromOptimalExamples.learnCompressed), until the CP-net next changes
+    void useDiagram(DecisionDiagram diagram)
+    {
+        VariableIndex index = diagram.getVariableIndex();
+        if (index.size() != this.getVars().size())
+        {
+            throw new RuntimeException("decision diagram is over different preference variables");
+        }
+        for (String var : this.getVars())
+        {
+            if (index.id(var) < 0)
+            {
+                throw new RuntimeException("decision diagram is over different preference variables");
+            }
+        }
+        this.diagram = diagram;
+        this.diagramModificationCount = this.modificationCount;
+    }
+    // Return the preferred value of the variable given the condition (null if its CP-table has no such entry)
+    // The condition must assign all of the variable's parents
+    public Boolean preferredValueGiven(String var, Assignment condition)
+    {
+        if (this.diagram != null && this.diagramModificationCount == this.modificationCount)
+        {
+            return this.diagram.preferredValueGiven(var,condition);
+        }
+        return this.varToCPT.get(var).preferredValueGiven(condition);
+    }
+
     // Declare the existence of a variable, initializing the relevant fields
     public void addVar(String varName, String positiveValName, String negativeValName)
     {
@@ -181,6 +299,8 @@ class PreferenceSpecification
         valueNames.put(Boolean.TRUE,positiveValName);
         valueNames.put(Boolean.FALSE,negativeValName);
         this.varToValueNames.put(varName,valueNames);
+        this.variableIndex = null;
+        this.modificationCount++;
     }
     // Version that leaves it up to the class to make up names
     public void addVar(String varName)
@@ -196,6 +316,7 @@ class PreferenceSpecification
             throw new RuntimeException("tried to add a CPT for an undeclared preference variable");
         }
         this.varToCPT.put(var,newCPT);
+        this.modificationCount++;
     }
 
     // Attempt to add "condition: preferredValue > !preferredValue" to var's CP-table (replacing any existing
@@ -220,6 +341,7 @@ class PreferenceSpecification
         }
         else
         {
+            this.modificationCount++;
             return  Boolean.TRUE;
         }
     }
@@ -253,35 +375,173 @@ class PreferenceSpecification
     }
 
 
+    // Check the CP-net's structure without touching the outcome space, in time linear in the size of the CP-tables:
+    //  every variable has a CP-table for itself, all rows of a table are over the same parent set, parents are
+    //  declared variables, every parent assignment has a row, and the parent relation is acyclic
+    public ValidationReport validate()
+    {
+        ValidationReport report = new ValidationReport();
+        HashMap<String,Set<String>> varToParents = new HashMap<String,Set<String>>();
+        for (String var : this.getVars())
+        {
+            CPTable table = this.varToCPT.get(var);
+            if (table == null)
+            {
+                report.missingCPTs.add(var);
+                varToParents.put(var,Collections.<String>emptySet());
+                continue;
+            }
+            if (!var.equals(table.var))
+            {
+                report.mismatchedCPTVars.add(var);
+            }
+
+            // All rows should be keyed by assignments to the same parent set
+            Set<String> shape = null;
+            boolean consistentShape = true;
+            for (Assignment parentAssignment : table.keySet())
+            {
+                if (shape == null)
+                {
+                    shape = parentAssignment.keySet();
+                }
+                else if (!shape.equals(parentAssignment.keySet()))
+                {
+                    consistentShape = false;
+                    break;
+                }
+            }
+            HashSet<String> parents = table.getParents();
+            if (!consistentShape)
+            {
+                report.inconsistentKeyShapes.add(var);
+            }
+
+            HashSet<String> undeclared = new HashSet<String>();
+            for (String parent : parents)
+            {
+                if (!this.varToValueNames.containsKey(parent) || parent.equals(var))
+                {
+                    undeclared.add(parent);
+                }
+            }
+            if (!undeclared.isEmpty())
+            {
+                report.invalidParents.put(var,undeclared);
+            }
+
+            // With a consistent shape and distinct keys, the table is complete iff it has a row per parent assignment
+            // (Row counts are longs; only a table with 63 or more parents, which can never be complete, has its count of
+            //  missing rows capped)
+            long expected = (parents.size() >= 63) ? Long.MAX_VALUE : (1L << parents.size());
+            if (consistentShape && table.size() != expected)
+            {
+                report.incompleteCPTs.put(var,expected - table.size());
+            }
+            varToParents.put(var,parents);
+        }
+
+        List<String> order = PreferenceSpecification.topologicalOrder(varToParents);
+        if (order.size() < varToParents.size())
+        {
+            report.cyclicVars.addAll(varToParents.keySet());
+            report.cyclicVars.removeAll(order);
+        }
+        return report;
+    }
+    // Variables ordered so that parents come before children, or null if the parent relation is cyclic or some
+    //  variable has no CP-table (see validate() for which)
+    public List<String> topologicalOrder()
+    {
+        HashMap<String,Set<String>> varToParents = new HashMap<String,Set<String>>();
+        for (String var : this.getVars())
+        {
+            CPTable table = this.varToCPT.get(var);
+            if (table == null)
+            {
+                return null;
+            }
+            varToParents.put(var,table.getParents());
+        }
+        List<String> order = PreferenceSpecification.topologicalOrder(varToParents);
+        return (order.size() == varToParents.size()) ? order : null;
+    }
+    // Helper function
+    // Variables on or downstream of a cycle are left out of the returned order (see VariableIndex.topologicalOrder)
+    // (Parents that are not keys of the map are ignored)
+    private static List<String> topologicalOrder(Map<String,Set<String>> varToParents)
+    {
+        VariableIndex index = new VariableIndex(varToParents.keySet());
+        int[][] parentIds = new int[index.size()][];
+        for (int var = 0; var < index.size(); var++)
+        {
+            ArrayList<Integer> knownParents = new ArrayList<Integer>();
+            for (String parent : varToParents.get(index.name(var)))
+            {
+                if (index.id(parent) >= 0)
+                {
+                    knownParents.add(index.id(parent));
+                }
+            }
+            parentIds[var] = new int[knownParents.size()];
+            for (int j = 0; j < knownParents.size(); j++)
+            {
+                parentIds[var][j] = knownParents.get(j);
+            }
+        }
+        ArrayList<String> order = new ArrayList<String>();
+        for (int var : VariableIndex.topologicalOrder(parentIds))
+        {
+            order.add(index.name(var));
+        }
+        return order;
+    }
+
     // Generate all preferences o>o' entailed by the CP-net
     // Warning: Exponential-space in the number of preference variablesvariables
     public HashSet<Comparison> allEntailments()
     {
+        this.checkGraphSize();
+        EntailmentsEvent event = new EntailmentsEvent();
+        event.begin();
         HashSet<Comparison> entailments = new HashSet<Comparison>();
-        HashMap<Assignment,HashSet<Assignment>> preferenceGraph = this.inducedPreferenceGraph();
+        VariableIndex index = this.getVariableIndex();
+        int[][] improvingFlips = this.improvingFlipWords(index);
+        Assignment[] outcomes = PreferenceSpecification.unpackAll(index);
         // Take each outcome o' and traverse its better descendants o in the preference graph, generating comparisons o>o'
         // (Yup, this is rather inefficient and can be improved with dynamic programming)
-        for (Assignment worse : preferenceGraph.keySet())
+        // Outcomes are handled as words; the visited set and stack are reused across starting points
+        BitSet explored = new BitSet(outcomes.length);
+        int[] frontier = new int[outcomes.length + 1];
+        for (int worse = 0; worse < outcomes.length; worse++)
         {
-            HashSet<Assignment> explored = new HashSet<Assignment>();
-            LinkedList<Assignment> frontier = new LinkedList<Assignment>();
-            frontier.addFirst(worse);
+            explored.clear();
+            int frontierSize = 0;
+            frontier[frontierSize++] = worse;
             do{
-                Assignment current = frontier.removeFirst();
-                for (Assignment better : preferenceGraph.get(current))
+                int current = frontier[--frontierSize];
+                for (int better : improvingFlips[current])
                 {
-                    if (!explored.contains(better))
+                    if (!explored.get(better))
                     {
-                        explored.add(better);
-                        frontier.addFirst(better);
-                        entailments.add(new Comparison(better,worse));
+                        explored.set(better);
+                        frontier[frontierSize++] = better;
+                        entailments.add(new Comparison(outcomes[better],outcomes[worse]));
                     }
-                    if (better.equals(worse))
+                    if (better == worse)
                     {
                         throw new RuntimeException("inconsistency in CP-net detected");
                     }
                 }
-            }while (!frontier.isEmpty());
+            }while (frontierSize > 0);
+        }
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.variableCount = index.size();
+            event.outcomeCount = outcomes.length;
+            event.entailmentCount = entailments.size();
+            event.commit();
         }
         return entailments;
     }
@@ -290,67 +550,93 @@ class PreferenceSpecification
     // Warning: Exponential-space in the number of preference variables
     public HashMap<Assignment,HashSet<Assignment>> inducedPreferenceGraph()
     {
-        // Don't do this for large CP-nets
+        this.checkGraphSize();
+        InducedGraphEvent event = new InducedGraphEvent();
+        event.begin();
+        VariableIndex index = this.getVariableIndex();
+        int[][] improvingFlips = this.improvingFlipWords(index);
+        Assignment[] outcomes = PreferenceSpecification.unpackAll(index);
+        long numEdges = 0;
+
+        // Assignment -> list of more-preferred assignments that differ on one preference variable
+        HashMap<Assignment,HashSet<Assignment>> assnToImprovingFlips = new HashMap<Assignment,HashSet<Assignment>>(2 * outcomes.length);
+        for (int word = 0; word < outcomes.length; word++)
+        {
+            HashSet<Assignment> better = new HashSet<Assignment>();
+            for (int flipped : improvingFlips[word])
+            {
+                better.add(outcomes[flipped]);
+            }
+            assnToImprovingFlips.put(outcomes[word],better);
+            numEdges += better.size();
+        }
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.variableCount = index.size();
+            event.outcomeCount = outcomes.length;
+            event.edgeCount = numEdges;
+            event.commit();
+        }
+        return assnToImprovingFlips;
+    }
+    // Helper function
+    // Don't enumerate the outcome space for large CP-nets
+    private void checkGraphSize()
+    {
         if (this.varToCPT.size() >= 15)
         {
             throw new RuntimeException("attempted to generate a huge induced preference graph");
         }
+    }
+    // Helper function
+    // For each outcome word, the outcome words reachable by one improving flip
+    // (A flip of a variable is improving if the variable's CP-table prefers the flipped value given the other values)
+    int[][] improvingFlipWords(VariableIndex index)
+    {
+        int numVars = index.size();
+        CompiledCPT[] cpts = new CompiledCPT[numVars];
+        for (int i = 0; i < numVars; i++)
+        {
+            cpts[i] = new CompiledCPT(this.varToCPT.get(index.name(i)),index);
+        }
 
-        // Assignment -> list of more-preferred assignments that differ on one preference variable
-        HashMap<Assignment,HashSet<Assignment>> assnToImprovingFlips = new HashMap<Assignment,HashSet<Assignment>>();
-
-        // Assignments we are finished exploring
-        HashSet<Assignment> explored = new HashSet<Assignment>();
-        // Assignments we have yet to explore
-        Set<Assignment> remaining = Assignment.allAssignments(this.varToCPT.keySet());
-        // Construct the graph by traversing from worse to better
-        while (!remaining.isEmpty())
-        {
-            // Find an unexplored starting point
-            LinkedList<Assignment> frontier = new LinkedList<Assignment>();
-            frontier.addFirst(remaining.iterator().next());
-            explored.add(remaining.iterator().next());
-            // Explore improvements from that point until we run out of places to explore
-            while (!frontier.isEmpty())
-            {
-                Assignment assn = frontier.removeFirst();
-
-                // Find all improving flips
-                HashSet<Assignment> improvingFlips = new HashSet<Assignment>();
-                for (String varToFlip : this.varToCPT.keySet())
-                {
-                    Assignment flippedAssn = assn.flipped(varToFlip);
-                    // Check whether the candidate flipped variable's CP-table entails that the flip is preferred
-                    if (this.varToCPT.get(varToFlip).preferredValueGiven(flippedAssn) == flippedAssn.get(varToFlip))
-                    {
-                        improvingFlips.add(flippedAssn);
-                    }
-                }
-                // These are the current assignment's children in the induced preference graph
-                assnToImprovingFlips.put(assn,improvingFlips);
-
-                // Put these items in line to explore if they haven't been already
-                for (Assignment better : improvingFlips)
+        int[][] improvingFlips = new int[1 << numVars][];
+        int[] buffer = new int[numVars];
+        for (int word = 0; word < improvingFlips.length; word++)
+        {
+            int numFlips = 0;
+            for (int i = 0; i < numVars; i++)
+            {
+                int flipped = word ^ (1 << i);
+                byte preferredValue = cpts[i].preferredValue(flipped);
+                if (preferredValue != CompiledCPT.MISSING && (preferredValue == CompiledCPT.TRUE) == ((flipped & (1 << i)) != 0))
                 {
-                    if (!explored.contains(better))
-                    {
-                        explored.add(better);
-                        frontier.addFirst(better);
-                    }
+                    buffer[numFlips++] = flipped;
                 }
-
             }
-            remaining.removeAll(explored);
+            improvingFlips[word] = Arrays.copyOf(buffer,numFlips);
         }
-
-
-        return assnToImprovingFlips;
+        return improvingFlips;
+    }
+    // Helper function
+    // One Assignment object per outcome word
+    private static Assignment[] unpackAll(VariableIndex index)
+    {
+        Assignment[] outcomes = new Assignment[1 << index.size()];
+        for (int word = 0; word < outcomes.length; word++)
+        {
+            outcomes[word] = index.unpack(word);
+        }
+        return outcomes;
     }
 
 
     // Write an XML file of the preferences, similarly to the read-in format
     void writeXML(String filePath)
     {
+        XmlSaveEvent event = new XmlSaveEvent();
+        event.begin();
         try {
 
             // Build XML tree
@@ -370,10 +656,11 @@ class PreferenceSpecification
                 varNameElement.appendChild(doc.createTextNode(varEntry.getKey())); // the variable name itself
                 varElement.appendChild(varNameElement);
 
-                for (HashMap.Entry<Boolean,String> valEntry : varEntry.getValue().entrySet())
+                // The reader takes the first value to be "true", so write that one first
+                for (Boolean val : new Boolean[]{Boolean.TRUE,Boolean.FALSE})
                 {
                     Element valNameElement = doc.createElement("DOMAIN-VALUE");
-                    valNameElement.appendChild(doc.createTextNode(valEntry.getValue())); // the variable name itself
+                    valNameElement.appendChild(doc.createTextNode(varEntry.getValue().get(val))); // the value name itself
                     varElement.appendChild(valNameElement);
                 }
             }
@@ -403,7 +690,7 @@ class PreferenceSpecification
                     for (Map.Entry<String,Boolean> assnEntry : stmtEntry.getKey().entrySet())
                     {
                         Element stmtCondElement = doc.createElement("CONDITION");
-                        String condVal = this.varToValueNames.get(var).get(assnEntry.getValue());
+                        String condVal = this.varToValueNames.get(assnEntry.getKey()).get(assnEntry.getValue());
                         stmtCondElement.appendChild(doc.createTextNode(assnEntry.getKey().concat("=").concat(condVal)));
                         stmtElement.appendChild(stmtCondElement);
                     }
@@ -423,12 +710,140 @@ class PreferenceSpecification
             StreamResult result = new StreamResult(new File(filePath));
             transformer.transform(source, result);
 
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.path = filePath;
+                event.variableCount = this.varToValueNames.size();
+                event.statementCount = stmtID;
+                event.commit();
+            }
+
         } catch (ParserConfigurationException pce) {
             pce.printStackTrace();
         } catch (TransformerException tfe) {
             tfe.printStackTrace();
         }
     }
+
+    // Compact binary format, much faster to read than XML since no DOM is built
+    // Layout: magic, number of variables, then per variable its name and value names (true first),
+    //  then per variable its name, number of statements, and each statement's parent assignment and preferred value
+    private static final int BINARY_MAGIC = 0x43504E31; // "CPN1"
+    void writeBinary(String filePath) throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath))))
+        {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(this.varToValueNames.size());
+            for (HashMap.Entry<String,HashMap<Boolean,String>> varEntry : this.varToValueNames.entrySet())
+            {
+                out.writeUTF(varEntry.getKey());
+                out.writeUTF(varEntry.getValue().get(Boolean.TRUE));
+                out.writeUTF(varEntry.getValue().get(Boolean.FALSE));
+            }
+            for (HashMap.Entry<String,CPTable> varEntry : this.varToCPT.entrySet())
+            {
+                out.writeUTF(varEntry.getKey());
+                out.writeInt(varEntry.getValue().size());
+                for (CPTable.Entry<Assignment,Boolean> stmtEntry : varEntry.getValue().entrySet())
+                {
+                    out.writeInt(stmtEntry.getKey().size());
+                    for (Map.Entry<String,Boolean> assnEntry : stmtEntry.getKey().entrySet())
+                    {
+                        out.writeUTF(assnEntry.getKey());
+                        out.writeBoolean(assnEntry.getValue());
+                    }
+                    out.writeBoolean(stmtEntry.getValue());
+                }
+            }
+        }
+    }
+    // Read a CP-net written by writeBinary
+    static PreferenceSpecification readBinary(String filePath) throws IOException
+    {
+        PreferenceSpecification net = new PreferenceSpecification();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath))))
+        {
+            if (in.readInt() != BINARY_MAGIC)
+            {
+                throw new IOException("not a binary CP-net file: ".concat(filePath));
+            }
+            int numVars = in.readInt();
+            for (int i = 0; i < numVars; i++)
+            {
+                net.addVar(in.readUTF(),in.readUTF(),in.readUTF());
+            }
+            for (int i = 0; i < numVars; i++)
+            {
+                CPTable table = new CPTable(in.readUTF());
+                int numStatements = in.readInt();
+                for (int j = 0; j < numStatements; j++)
+                {
+                    Assignment parentAssignment = new Assignment();
+                    int numParents = in.readInt();
+                    for (int k = 0; k < numParents; k++)
+                    {
+                        parentAssignment.put(in.readUTF(),in.readBoolean());
+                    }
+                    table.put(parentAssignment,in.readBoolean());
+                }
+                net.setCPT(table.var,table);
+            }
+        }
+        return net;
+    }
+}
+
+// Result of PreferenceSpecification.validate()
+class ValidationReport
+{
+    // Variables without a CP-table
+    TreeSet<String> missingCPTs = new TreeSet<String>();
+    // Variables whose CP-table is declared for a different variable
+    TreeSet<String> mismatchedCPTVars = new TreeSet<String>();
+    // Variables whose CP-table rows are not all over the same parent set
+    TreeSet<String> inconsistentKeyShapes = new TreeSet<String>();
+    // Variable -> parents that are undeclared or the variable itself
+    TreeMap<String,Set<String>> invalidParents = new TreeMap<String,Set<String>>();
+    // Variable -> number of parent assignments without a row
+    TreeMap<String,Long> incompleteCPTs = new TreeMap<String,Long>();
+    // Variables on (or depending on) a cycle in the parent relation
+    TreeSet<String> cyclicVars = new TreeSet<String>();
+
+    // Whether no problems were found
+    public boolean isValid()
+    {
+        return this.missingCPTs.isEmpty() && this.mismatchedCPTVars.isEmpty() && this.inconsistentKeyShapes.isEmpty()
+                && this.invalidParents.isEmpty() && this.incompleteCPTs.isEmpty() && this.cyclicVars.isEmpty();
+    }
+
+    // Pretty string listing each kind of problem found (or "valid")
+    @Override
+    public String toString()
+    {
+        if (this.isValid())
+        {
+            return "valid";
+        }
+        StringBuilder out = new StringBuilder();
+        this.describe(out,"missing CP-tables",this.missingCPTs);
+        this.describe(out,"CP-tables for the wrong variable",this.mismatchedCPTVars);
+        this.describe(out,"rows over different parent sets",this.inconsistentKeyShapes);
+        this.describe(out,"invalid parents",this.invalidParents);
+        this.describe(out,"missing rows",this.incompleteCPTs);
+        this.describe(out,"cyclic parent relation",this.cyclicVars);
+        return out.toString().trim();
+    }
+    // Helper function
+    private void describe(StringBuilder out, String problem, Object found)
+    {
+        boolean empty = (found instanceof Collection) ? ((Collection<?>) found).isEmpty() : ((Map<?,?>) found).isEmpty();
+        if (!empty)
+        {
+            out.append(problem).append(": ").append(found.toString()).append('\n');
+        }
+    }
 }
 
 // Specification of the conditional preferences for one variable
@@ -518,6 +933,21 @@ class CPTable extends HashMap<Assignment,Boolean>
 
         return mod.simplified();
     }
+    // Return an equivalent CPTable with superfluous parents removed, for comparing tables (see CPNetDiff)
+    // All statements must be over the same parent set
+    CPTable normalized()
+    {
+        Set<String> shape = null;
+        for (Assignment parentAssignment : this.keySet())
+        {
+            if (shape != null && !shape.equals(parentAssignment.keySet()))
+            {
+                throw new RuntimeException("CP-table rows over different parent sets");
+            }
+            shape = parentAssignment.keySet();
+        }
+        return this.simplified();
+    }
     // Helper function for modifying the table
     // Detect and remove superfluous parents (i.e., variables in the conditions that the preferences do not really depend on)
     // Assumes all parents are present in all statements initially
@@ -788,6 +1218,69 @@ class Assignment extends TreeMap<String,Boolean>
     }
 }
 
+// Reusable cursor over all 2^k assignments to a set of binary variables, in Gray-code order
+// Each step flips exactly one variable of a single Assignment in place, so walking the assignments allocates nothing
+//  (unlike Assignment.nextLexicographically and allAssignments)
+// Starts at all falses; bit j of bits() holds the value of the j-th variable in the given list
+class GrayCodeCursor
+{
+    private final String[] vars;
+    // The current assignment, modified in place by next()
+    private final Assignment current;
+    private long bits;
+    // Number of steps taken since the start
+    private long step;
+
+    // Constructor
+    public GrayCodeCursor(List<String> vars)
+    {
+        if (vars.size() > 62)
+        {
+            throw new RuntimeException("too many variables to enumerate assignments");
+        }
+        this.vars = vars.toArray(new String[0]);
+        this.current = new Assignment();
+        this.reset();
+    }
+
+    // Go back to the all-falses assignment
+    public void reset()
+    {
+        for (String var : this.vars)
+        {
+            this.current.put(var,Boolean.FALSE);
+        }
+        this.bits = 0L;
+        this.step = 0;
+    }
+
+    // Move to the next assignment; return false (without moving) once all 2^k assignments have been visited
+    public boolean next()
+    {
+        if (this.step + 1 >= (1L << this.vars.length))
+        {
+            return false;
+        }
+        this.step++;
+        int flipped = Long.numberOfTrailingZeros(this.step);
+        this.bits ^= (1L << flipped);
+        this.current.put(this.vars[flipped],(this.bits & (1L << flipped)) != 0);
+        return true;
+    }
+
+    // The current assignment
+    // This is the cursor's own object and changes with every step; copy it to keep it
+    public Assignment assignment()
+    {
+        return this.current;
+    }
+    // The current assignment as bits (bit j is the value of the j-th variable)
+    public long bits()
+    {
+        return this.bits;
+    }
+}
+
 // Comparison o>o' for two outcomes o=better, o'=worse
 class Comparison
 {
@@ -0,0 +1,293 @@
+import java.io.*;
+import java.util.*;
+
+// Partitioned learning: the examples are spread over worker JVMs on the same host, so that no single process holds them all
+// The coordinator runs the usual learn() round loop; for each candidate (var, parent set) it asks every shard for the
+//  preferred value its examples imply for each parent assignment, and merges the answers
+// A parent set is consistent overall iff every shard is consistent and no two shards disagree on a row, so the
+//  result is the same as learning from all the examples in one process
+//
+// Wire protocol over the worker's stdin/stdout (DataOutputStream encoding):
+//  coordinator -> worker:  'E' example   (repeated; see writeExample)
+//                          'Q' var k parent_1 ... parent_k   (parents in ascending name order)
+//                          'X'           (exit)
+//  worker -> coordinator:  for each 'Q', a status byte (CONSISTENT or CONFLICT), then for CONSISTENT the 2^k rows,
+//                          one byte each (TRUE, FALSE, or MISSING as in CompiledCPT); bit j of a row is the j-th parent
+class ShardedCandidateEvaluator implements CandidateEvaluator<CPTable>, AutoCloseable
+{
+    static final byte CONSISTENT = 0;
+    static final byte CONFLICT = 1;
+
+    // Worker processes and their pipes
+    private ArrayList<Process> workers;
+    private ArrayList<DataOutputStream> toWorkers;
+    private ArrayList<DataInputStream> fromWorkers;
+
+    // Constructor
+    // Starts numWorkers worker JVMs (using this JVM's java binary and class path) and streams the examples to them
+    //  round-robin; the examples are not retained here, so the iterator may read them lazily from storage
+    public ShardedCandidateEvaluator(Iterator<OptimalExample> examples, int numWorkers)
+    {
+        this.workers = new ArrayList<Process>();
+        this.toWorkers = new ArrayList<DataOutputStream>();
+        this.fromWorkers = new ArrayList<DataInputStream>();
+        String java = new File(new File(System.getProperty("java.home"),"bin"),"java").getPath();
+        try
+        {
+            for (int i = 0; i < numWorkers; i++)
+            {
+                ProcessBuilder builder = new ProcessBuilder(java,"-cp",System.getProperty("java.class.path"),"ExampleShardWorker");
+                builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                Process worker = builder.start();
+                this.workers.add(worker);
+                this.toWorkers.add(new DataOutputStream(new BufferedOutputStream(worker.getOutputStream())));
+                this.fromWorkers.add(new DataInputStream(new BufferedInputStream(worker.getInputStream())));
+            }
+            int next = 0;
+            while (examples.hasNext())
+            {
+                DataOutputStream out = this.toWorkers.get(next);
+                out.writeByte('E');
+                ExampleShardWorker.writeExample(out,examples.next());
+                next = (next + 1) % numWorkers;
+            }
+        }
+        catch (IOException e)
+        {
+            this.close();
+            throw new RuntimeException("could not start example shard workers",e);
+        }
+    }
+
+    @Override
+    public CPTable evaluate(String var, Set<String> candidateParents)
+    {
+        ArrayList<String> parents = new ArrayList<String>(new TreeSet<String>(candidateParents));
+        byte[] merged = new byte[1 << parents.size()];
+        Arrays.fill(merged,CompiledCPT.MISSING);
+        boolean conflict = false;
+        try
+        {
+            // Send the query to every shard before reading any answer, so the shards work in parallel
+            for (DataOutputStream out : this.toWorkers)
+            {
+                out.writeByte('Q');
+                out.writeUTF(var);
+                out.writeInt(parents.size());
+                for (String parent : parents)
+                {
+                    out.writeUTF(parent);
+                }
+                out.flush();
+            }
+            // Read every answer (even after a conflict, to keep the pipes in step)
+            for (DataInputStream in : this.fromWorkers)
+            {
+                if (in.readByte() == CONFLICT)
+                {
+                    conflict = true;
+                    continue;
+                }
+                for (int row = 0; row < merged.length; row++)
+                {
+                    byte value = in.readByte();
+                    if (value == CompiledCPT.MISSING)
+                    {
+                        continue;
+                    }
+                    if (merged[row] != CompiledCPT.MISSING && merged[row] != value)
+                    {
+                        conflict = true;
+                    }
+                    merged[row] = value;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("lost contact with an example shard worker",e);
+        }
+        if (conflict)
+        {
+            return null;
+        }
+
+        CPTable created = new CPTable(var);
+        for (int row = 0; row < merged.length; row++)
+        {
+            if (merged[row] != CompiledCPT.MISSING)
+            {
+                Assignment parentAssignment = new Assignment();
+                for (int j = 0; j < parents.size(); j++)
+                {
+                    parentAssignment.put(parents.get(j),(row & (1 << j)) != 0);
+                }
+                created = created.altered(parentAssignment,merged[row] == CompiledCPT.TRUE);
+            }
+        }
+        return created;
+    }
+
+    // Tell the workers to exit and wait for them
+    @Override
+    public void close()
+    {
+        for (int i = 0; i < this.workers.size(); i++)
+        {
+            try
+            {
+                this.toWorkers.get(i).writeByte('X');
+                this.toWorkers.get(i).flush();
+            }
+            catch (IOException e)
+            {
+                // The worker is already gone
+            }
+        }
+        for (Process worker : this.workers)
+        {
+            try
+            {
+                worker.waitFor();
+            }
+            catch (InterruptedException e)
+            {
+                worker.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
+
+// Worker process holding one shard of the examples (see ShardedCandidateEvaluator for the protocol)
+class ExampleShardWorker
+{
+    // This shard's examples
+    private ArrayList<OptimalExample> examples = new ArrayList<OptimalExample>();
+
+    public static void main(String[] args) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+        new ExampleShardWorker().serve(in,out);
+    }
+
+    // Answer commands until told to exit (or until the coordinator goes away)
+    void serve(DataInputStream in, DataOutputStream out) throws IOException
+    {
+        while (true)
+        {
+            byte command;
+            try
+            {
+                command = in.readByte();
+            }
+            catch (EOFException e)
+            {
+                return;
+            }
+            if (command == 'E')
+            {
+                this.examples.add(ExampleShardWorker.readExample(in));
+            }
+            else if (command == 'Q')
+            {
+                String var = in.readUTF();
+                int numParents = in.readInt();
+                ArrayList<String> parents = new ArrayList<String>();
+                for (int j = 0; j < numParents; j++)
+                {
+                    parents.add(in.readUTF());
+                }
+                this.answer(var,parents,out);
+                out.flush();
+            }
+            else if (command == 'X')
+            {
+                return;
+            }
+            else
+            {
+                throw new RuntimeException("unknown command from coordinator");
+            }
+        }
+    }
+
+    // Helper function
+    // Same consistency check as createCPTFromOptima, restricted to this shard
+    private void answer(String var, List<String> parents, DataOutputStream out) throws IOException
+    {
+        byte[] rows = new byte[1 << parents.size()];
+        Arrays.fill(rows,CompiledCPT.MISSING);
+        for (OptimalExample example : this.examples)
+        {
+            // Relevant examples are those that are not conditioned on the variable in question
+            Boolean valInOptimum = example.optimum.get(var);
+            if (example.condition.containsKey(var) || valInOptimum == null)
+            {
+                continue;
+            }
+            int row = 0;
+            boolean hasAllParents = true;
+            for (int j = 0; j < parents.size(); j++)
+            {
+                Boolean parentVal = example.optimum.get(parents.get(j));
+                if (parentVal == null)
+                {
+                    hasAllParents = false;
+                    break;
+                }
+                if (parentVal)
+                {
+                    row |= (1 << j);
+                }
+            }
+            if (!hasAllParents)
+            {
+                continue;
+            }
+            byte value = valInOptimum ? CompiledCPT.TRUE : CompiledCPT.FALSE;
+            if (rows[row] != CompiledCPT.MISSING && rows[row] != value)
+            {
+                out.writeByte(ShardedCandidateEvaluator.CONFLICT);
+                return;
+            }
+            rows[row] = value;
+        }
+        out.writeByte(ShardedCandidateEvaluator.CONSISTENT);
+        out.write(rows);
+    }
+
+    // Example serialization: condition, then optimum, each as a count followed by (name, value) pairs
+    static void writeExample(DataOutputStream out, OptimalExample example) throws IOException
+    {
+        ExampleShardWorker.writeAssignment(out,example.condition);
+        ExampleShardWorker.writeAssignment(out,example.optimum);
+    }
+    static OptimalExample readExample(DataInputStream in) throws IOException
+    {
+        Assignment condition = ExampleShardWorker.readAssignment(in);
+        Assignment optimum = ExampleShardWorker.readAssignment(in);
+        return new OptimalExample(condition,optimum);
+    }
+    private static void writeAssignment(DataOutputStream out, Assignment assn) throws IOException
+    {
+        out.writeInt(assn.size());
+        for (Map.Entry<String,Boolean> entry : assn.entrySet())
+        {
+            out.writeUTF(entry.getKey());
+            out.writeBoolean(entry.getValue());
+        }
+    }
+    private static Assignment readAssignment(DataInputStream in) throws IOException
+    {
+        Assignment assn = new Assignment();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++)
+        {
+            String var = in.readUTF();
+            assn.put(var,in.readBoolean());
+        }
+        return assn;
+    }
+}
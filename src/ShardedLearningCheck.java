@@ -0,0 +1,70 @@
+import java.util.*;
+
+// Checks that partitioned learning (learnPartitioned, see ShardedCandidateEvaluator) gives the same CP-net as learn()
+//  on random CP-nets, and how long each takes
+// Usage: ShardedLearningCheck [trials] [variables] [inDegreeBound] [examples] [workers] [seed]
+// Prints one CSV line per trial; "same" compares the CP-tables exactly (both runs finding no consistent net counts as
+//  the same), and the exit status is 1 if any trial differs
+// With the defaults ("ShardedLearningCheck 10 10 2 100 3 0"), all 10 trials learn complete CP-nets and agree
+class ShardedLearningCheck
+{
+    public static void main(String[] args)
+    {
+        int trials = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+        int numVars = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        int inDegreeBound = (args.length > 2) ? Integer.parseInt(args[2]) : 2;
+        int numExamples = (args.length > 3) ? Integer.parseInt(args[3]) : 100;
+        int numWorkers = (args.length > 4) ? Integer.parseInt(args[4]) : 3;
+        long seed = (args.length > 5) ? Long.parseLong(args[5]) : 0L;
+
+        int numSame = 0;
+        Random rng = new Random(seed);
+        System.out.println("trial,learnComplete,partitionedComplete,same,learnMillis,partitionedMillis");
+        for (int trial = 0; trial < trials; trial++)
+        {
+            PreferenceSpecification net = PreferenceSpecification.random(inDegreeBound,numVars,rng);
+            ArrayList<OptimalExample> examples = new ArrayList<OptimalExample>();
+            for (int i = 0; i < numExamples; i++)
+            {
+                examples.add(OptimalExample.biasedRandomExample(net,0.3f,rng));
+            }
+            HashSet<String> allVars = new HashSet<String>(net.getVars());
+
+            long start = System.nanoTime();
+            PreferenceSpecification learned = CPNetLearningFromOptimalExamples.learn(allVars,new HashSet<OptimalExample>(examples),inDegreeBound);
+            long learnMillis = (System.nanoTime() - start) / 1000000;
+            start = System.nanoTime();
+            PreferenceSpecification partitioned = CPNetLearningFromOptimalExamples.learnPartitioned(allVars,examples.iterator(),inDegreeBound,numWorkers);
+            long partitionedMillis = (System.nanoTime() - start) / 1000000;
+
+            boolean same = ShardedLearningCheck.sameTables(allVars,learned,partitioned);
+            if (same)
+            {
+                numSame++;
+            }
+            System.out.println(String.format("%d,%b,%b,%b,%d,%d",trial,learned != null,partitioned != null,same,learnMillis,partitionedMillis));
+        }
+
+        System.out.println(String.format("%d/%d trials gave the same CP-net",numSame,trials));
+        if (numSame != trials)
+        {
+            System.exit(1);
+        }
+    }
+    // Helper function
+    private static boolean sameTables(Set<String> allVars, PreferenceSpecification first, PreferenceSpecification second)
+    {
+        if (first == null || second == null)
+        {
+            return first == second;
+        }
+        for (String var : allVars)
+        {
+            if (!first.getCPT(var).equals(second.getCPT(var)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,246 @@
+import java.util.*;
+
+// Interned dictionary of preference variables: each variable name gets a dense int id (alphabetical order)
+// Immutable once constructed
+// Lets hot loops work with ints instead of comparing strings, and lets an outcome over up to 64 variables
+//  be packed into a single long "outcome word" where bit i holds the value of variable i
+class VariableIndex
+{
+    // Id -> variable name
+    private final String[] names;
+    // Variable name -> id
+    private final HashMap<String,Integer> nameToId;
+
+    // Constructor
+    public VariableIndex(Set<String> varSet)
+    {
+        this.names = new TreeSet<String>(varSet).toArray(new String[0]);
+        this.nameToId = new HashMap<String,Integer>();
+        for (int i = 0; i < this.names.length; i++)
+        {
+            this.nameToId.put(this.names[i],i);
+        }
+    }
+
+    // Number of variables
+    public int size()
+    {
+        return this.names.length;
+    }
+    // Id of the given variable, or -1 if it is unknown
+    public int id(String var)
+    {
+        Integer id = this.nameToId.get(var);
+        return (id == null) ? -1 : id;
+    }
+    // Name of the variable with the given id
+    public String name(int id)
+    {
+        return this.names[id];
+    }
+
+    // Whether outcomes over these variables fit in one outcome word
+    public boolean canPack()
+    {
+        return this.names.length <= 64;
+    }
+    // Helper function
+    private void checkPackable()
+    {
+        if (!this.canPack())
+        {
+            throw new RuntimeException("too many preference variables to pack an outcome into a word");
+        }
+    }
+
+    // Pack the true-valued variables of an assignment into an outcome word (unassigned variables become 0 bits)
+    public long pack(Assignment assn)
+    {
+        this.checkPackable();
+        long word = 0L;
+        for (Map.Entry<String,Boolean> entry : assn.entrySet())
+        {
+            int id = this.id(entry.getKey());
+            if (id < 0)
+            {
+                throw new RuntimeException("assignment refers to an unknown preference variable");
+            }
+            if (entry.getValue())
+            {
+                word |= (1L << id);
+            }
+        }
+        return word;
+    }
+    // Bits of the variables that the assignment assigns at all
+    public long assignedMask(Assignment assn)
+    {
+        this.checkPackable();
+        long mask = 0L;
+        for (String var : assn.keySet())
+        {
+            int id = this.id(var);
+            if (id < 0)
+            {
+                throw new RuntimeException("assignment refers to an unknown preference variable");
+            }
+            mask |= (1L << id);
+        }
+        return mask;
+    }
+
+    // Unpack an outcome word into a complete Assignment
+    public Assignment unpack(long word)
+    {
+        return this.unpack(word,(this.names.length == 64) ? -1L : (1L << this.names.length) - 1);
+    }
+    // Unpack only the variables in the given mask
+    public Assignment unpack(long word, long mask)
+    {
+        this.checkPackable();
+        Assignment assn = new Assignment();
+        for (int i = 0; i < this.names.length; i++)
+        {
+            if ((mask & (1L << i)) != 0)
+            {
+                assn.put(this.names[i],(word & (1L << i)) != 0);
+            }
+        }
+        return assn;
+    }
+
+    // Kahn's algorithm over variable ids, shared by every CP-net representation: parentIds[i] holds the parents of
+    //  variable i (each an id below parentIds.length)
+    // Returns the ids ordered so that parents come before children; variables on or downstream of a cycle are left
+    //  out, so the result is shorter than parentIds.length iff the parent relation is cyclic
+    static int[] topologicalOrder(int[][] parentIds)
+    {
+        int numVars = parentIds.length;
+        int[] numUnplacedParents = new int[numVars];
+        int[] numChildren = new int[numVars];
+        for (int var = 0; var < numVars; var++)
+        {
+            numUnplacedParents[var] = parentIds[var].length;
+            for (int parent : parentIds[var])
+            {
+                numChildren[parent]++;
+            }
+        }
+        int[][] children = new int[numVars][];
+        for (int var = 0; var < numVars; var++)
+        {
+            children[var] = new int[numChildren[var]];
+            numChildren[var] = 0;
+        }
+        for (int var = 0; var < numVars; var++)
+        {
+            for (int parent : parentIds[var])
+            {
+                children[parent][numChildren[parent]++] = var;
+            }
+        }
+
+        int[] order = new int[numVars];
+        int placed = 0;
+        for (int var = 0; var < numVars; var++)
+        {
+            if (numUnplacedParents[var] == 0)
+            {
+                order[placed++] = var;
+            }
+        }
+        for (int next = 0; next < placed; next++)
+        {
+            for (int child : children[order[next]])
+            {
+                if (--numUnplacedParents[child] == 0)
+                {
+                    order[placed++] = child;
+                }
+            }
+        }
+        return Arrays.copyOf(order,placed);
+    }
+}
+
+// A CP-table compiled against a VariableIndex
+// Each assignment to the parents becomes a row number (bit j of the row holds the value of the j-th parent by id),
+//  and the preferred values live in a flat byte array instead of a map keyed by Assignments
+class CompiledCPT
+{
+    // Row entries
+    static final byte FALSE = 0;
+    static final byte TRUE = 1;
+    static final byte MISSING = -1;
+
+    // Id of the variable over which preferences are specified
+    final int var;
+    // Ids of the parents, ascending
+    final int[] parentIds;
+    // Preferred value for each parent row
+    final byte[] rows;
+
+    // Constructor
+    public CompiledCPT(CPTable table, VariableIndex index)
+    {
+        this.var = index.id(table.var);
+        TreeSet<Integer> sortedParents = new TreeSet<Integer>();
+        for (String parent : table.getParents())
+        {
+            int id = index.id(parent);
+            if (id < 0)
+            {
+                throw new RuntimeException("CP-table refers to an unknown preference variable");
+            }
+            sortedParents.add(id);
+        }
+        this.parentIds = new int[sortedParents.size()];
+        int j = 0;
+        for (Integer id : sortedParents)
+        {
+            this.parentIds[j++] = id;
+        }
+        if (this.parentIds.length > 30)
+        {
+            throw new RuntimeException("too many parents to compile a CP-table");
+        }
+
+        // Look up each row the same way CPTable.preferredValueGiven would, walking the rows with a Gray-code cursor
+        // Rows are usually stored under the full parent assignment, so a direct lookup is tried before the scan
+        this.rows = new byte[1 << this.parentIds.length];
+        ArrayList<String> parentNames = new ArrayList<String>();
+        for (int id : this.parentIds)
+        {
+            parentNames.add(index.name(id));
+        }
+        GrayCodeCursor cursor = new GrayCodeCursor(parentNames);
+        do
+        {
+            Boolean preferredValue = table.get(cursor.assignment());
+            if (preferredValue == null)
+            {
+                preferredValue = table.preferredValueGiven(cursor.assignment());
+            }
+            this.rows[(int) cursor.bits()] = (preferredValue == null) ? MISSING : (preferredValue ? TRUE : FALSE);
+        } while (cursor.next());
+    }
+
+    // Row of the table selected by an outcome word
+    public int rowOf(long word)
+    {
+        int row = 0;
+        for (int j = 0; j < this.parentIds.length; j++)
+        {
+            if ((word & (1L << this.parentIds[j])) != 0)
+            {
+                row |= (1 << j);
+            }
+        }
+        return row;
+    }
+    // Preferred value of the variable given an outcome word (TRUE, FALSE, or MISSING)
+    public byte preferredValue(long word)
+    {
+        return this.rows[this.rowOf(word)];
+    }
+}